@@ -1,5 +1,7 @@
 package com.microservices.accounts.config;
 
+import com.microservices.accounts.service.SqlInjectionScanner;
+import com.microservices.accounts.service.SqlInjectionScanner.Rule;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -12,8 +14,8 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
-import java.util.regex.Pattern;
 
 /**
  * Security Filter for SQL Injection Protection
@@ -22,24 +24,19 @@ import java.util.regex.Pattern;
 @Configuration
 public class SecurityFilterConfig {
 
-    // Common SQL injection patterns for HTTP request filtering
-    private static final List<Pattern> SQL_INJECTION_PATTERNS = Arrays.asList(
-        Pattern.compile("(?i).*union.*select.*"),
-        Pattern.compile("(?i).*(--|#|/\\*|\\*/).*"),
-        Pattern.compile("(?i).*(or|and).*\\d+\\s*=\\s*\\d+.*"),
-        Pattern.compile("(?i).*(sleep|waitfor|delay|benchmark).*"),
-        Pattern.compile("(?i).*;.*"),
-        Pattern.compile("(?i).*(load_file|into\\s+outfile|into\\s+dumpfile).*"),
-        Pattern.compile("(?i).*information_schema.*"),
-        Pattern.compile("(?i).*(sys\\.|pg_|mysql\\.).*"),
-        Pattern.compile("(?i).*0x[0-9a-f]+.*"),
-        Pattern.compile("(?i).*char\\s*\\(.*"),
-        Pattern.compile("(?i).*ascii\\s*\\(.*"),
-        Pattern.compile("(?i).*substring\\s*\\(.*"),
-        Pattern.compile("(?i).*length\\s*\\(.*"),
-        Pattern.compile("(?i).*cast\\s*\\(.*"),
-        Pattern.compile("(?i).*convert\\s*\\(.*")
-    );
+    // Common SQL injection patterns for HTTP request filtering, checked in one pass
+    private static final SqlInjectionScanner SQL_INJECTION_SCANNER = new SqlInjectionScanner(EnumSet.of(
+        Rule.UNION_SELECT,
+        Rule.COMMENT,
+        Rule.BOOLEAN_COMPARISON,
+        Rule.TIME_DELAY,
+        Rule.SEMICOLON,
+        Rule.FILE_FUNCTION,
+        Rule.INFORMATION_SCHEMA,
+        Rule.SYSTEM_TABLE,
+        Rule.HEX_LITERAL,
+        Rule.FUNCTION_CALL
+    ));
 
     @Bean
     public OncePerRequestFilter sqlInjectionProtectionFilter() {
@@ -100,8 +97,7 @@ public class SecurityFilterConfig {
                     return false;
                 }
                 
-                return SQL_INJECTION_PATTERNS.stream()
-                    .anyMatch(pattern -> pattern.matcher(input).matches());
+                return SQL_INJECTION_SCANNER.isSuspicious(input);
             }
             
             private boolean isStandardHeader(String headerName) {
@@ -61,6 +61,10 @@ public class SupplierPaymentController {
             response.put("riskLevel", detection.getRiskLevel());
             response.put("anomalies", detection.getAnomalies());
             response.put("recommendation", detection.getRecommendation());
+            response.put("skippedChecks", detection.getSkippedChecks());
+            if (detection.getReason() != null) {
+                response.put("reason", detection.getReason());
+            }
             response.put("responseTimeMs", detection.getResponseTimeMs());
             response.put("acceptableResponseTime", acceptableResponseTime);
             response.put("timestamp", detection.getTimestamp());
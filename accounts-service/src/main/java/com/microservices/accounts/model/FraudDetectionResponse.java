@@ -1,6 +1,7 @@
 package com.microservices.accounts.model;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 public class FraudDetectionResponse {
@@ -14,6 +15,7 @@ public class FraudDetectionResponse {
     private Integer responseTimeMs;
     private LocalDateTime timestamp;
     private String reason;
+    private List<String> skippedChecks = new ArrayList<>(); // checks dropped to meet the response time budget
 
     // Constructors
     public FraudDetectionResponse() {}
@@ -62,4 +64,7 @@ public class FraudDetectionResponse {
 
     public String getReason() { return reason; }
     public void setReason(String reason) { this.reason = reason; }
+
+    public List<String> getSkippedChecks() { return skippedChecks; }
+    public void setSkippedChecks(List<String> skippedChecks) { this.skippedChecks = skippedChecks; }
 }
@@ -0,0 +1,29 @@
+package com.microservices.accounts.service;
+
+/**
+ * Response-time budget of one fraud check, started when the request arrives.
+ * Queries ask it how much time is left instead of measuring afterwards.
+ */
+public final class Deadline {
+
+    private final long deadlineNanos;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    public static Deadline afterMillis(long budgetMs) {
+        return new Deadline(System.nanoTime() + budgetMs * 1_000_000L);
+    }
+
+    /**
+     * @return whole milliseconds left, never negative
+     */
+    public long remainingMillis() {
+        return Math.max(0, (deadlineNanos - System.nanoTime()) / 1_000_000L);
+    }
+
+    public boolean isExpired() {
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+}
@@ -0,0 +1,114 @@
+package com.microservices.accounts.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Polls risk.iban_risk_changes and applies new rows to the {@link IbanRiskIndex},
+ * so risk updates reach this node within a poll interval without a full reload.
+ * The poll position is a transaction horizon rather than a change id: only rows
+ * from transactions older than the oldest running one are read, so a transaction
+ * that commits late is never skipped.
+ *
+ * <p>Replication lag is the age of the oldest change this node has not applied
+ * yet, on the database clock. A long-running transaction holds the horizon back,
+ * so committed changes behind it wait and the lag grows with them.
+ */
+@Component
+public class IbanRiskChangeFeed {
+
+    private static final Logger logger = LoggerFactory.getLogger(IbanRiskChangeFeed.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final IbanRiskIndex ibanRiskIndex;
+    private final boolean enabled;
+    private final int compactThreshold;
+
+    // Only touched by the scheduler thread
+    private long loadedWatermark = -1;
+    private long position = -1;
+
+    // When the last poll finished, and when the oldest change it could not apply was made (0 if none)
+    private volatile long lastPollMillis;
+    private volatile long oldestPendingMillis;
+
+    public IbanRiskChangeFeed(JdbcTemplate jdbcTemplate,
+                              IbanRiskIndex ibanRiskIndex,
+                              MeterRegistry meterRegistry,
+                              @Value("${risk-index.feed.enabled:true}") boolean enabled,
+                              @Value("${risk-index.feed.compact-threshold:100000}") int compactThreshold) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.ibanRiskIndex = ibanRiskIndex;
+        this.enabled = enabled;
+        this.compactThreshold = compactThreshold;
+        Gauge.builder("iban.risk.replication.lag", this, IbanRiskChangeFeed::replicationLagMillis)
+            .description("Age of the oldest IBAN risk change not yet applied to the index")
+            .baseUnit("milliseconds")
+            .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${risk-index.feed.poll-interval-ms:1000}")
+    public void poll() {
+        if (!enabled || !ibanRiskIndex.isLoaded()) {
+            return;
+        }
+        try {
+            long watermark = ibanRiskIndex.getWatermark();
+            if (watermark != loadedWatermark) {
+                // Fresh table: replay everything after the point it was read at
+                loadedWatermark = watermark;
+                position = watermark;
+            }
+
+            long horizon = IbanRiskIndex.currentTransactionHorizon(jdbcTemplate);
+            int[] applied = {0};
+            jdbcTemplate.query(
+                "SELECT id, iban, risk_level FROM risk.iban_risk_changes WHERE txid >= ? AND txid < ? ORDER BY id",
+                rs -> {
+                    if (ibanRiskIndex.applyChange(rs.getLong(1), rs.getString(2), rs.getString(3))) {
+                        applied[0]++;
+                    }
+                },
+                position, horizon);
+            position = horizon;
+
+            // Committed changes held back by a transaction still running below them
+            Double pendingAgeMillis = jdbcTemplate.queryForObject("""
+                SELECT EXTRACT(EPOCH FROM clock_timestamp()::timestamp - MIN(changed_at)) * 1000
+                FROM risk.iban_risk_changes WHERE txid >= ?
+                """, Double.class, position);
+            long now = System.currentTimeMillis();
+            oldestPendingMillis = pendingAgeMillis != null ? now - Math.max(0, pendingAgeMillis.longValue()) : 0;
+            lastPollMillis = now;
+
+            if (applied[0] > 0) {
+                logger.debug("Applied {} IBAN risk changes", applied[0]);
+            }
+            if (ibanRiskIndex.pendingChangeCount() > compactThreshold) {
+                logger.info("IBAN risk change overlay exceeded {} entries, reloading index", compactThreshold);
+                ibanRiskIndex.reload();
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to poll IBAN risk changes: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Age of the oldest change not applied yet; with nothing pending, the time
+     * since the last poll, which keeps growing if polling stops.
+     */
+    private double replicationLagMillis() {
+        long polled = lastPollMillis;
+        if (polled == 0) {
+            return Double.NaN;
+        }
+        long pending = oldestPendingMillis;
+        return System.currentTimeMillis() - (pending > 0 ? pending : polled);
+    }
+}
@@ -0,0 +1,612 @@
+package com.microservices.accounts.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory copy of risk.iban_risk_lookup.
+ * Each IBAN is packed 6 bits per character into fixed-width long words and stored,
+ * sorted, in an off-heap buffer followed by a one-byte risk code, so a lookup is a
+ * binary search over ~1M records instead of a JDBC round-trip.
+ * The same scan builds a {@link RiskyIbanFilter} over the non-GOOD rows; the filter
+ * can be kept on its own (risk-index.enabled=false) where memory is tight.
+ * Changes from risk.iban_risk_changes are applied to a concurrent overlay on top
+ * of the immutable table, so readers never block while deltas arrive.
+ */
+@Component
+public class IbanRiskIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(IbanRiskIndex.class);
+
+    static final int CHARS_PER_WORD = 10;
+    static final int BITS_PER_CHAR = 6;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final boolean enabled;
+    private final int fetchSize;
+    private final boolean filterEnabled;
+    private final double filterFalsePositiveRate;
+    private final String snapshotPath;
+
+    private volatile State state;
+
+    public IbanRiskIndex(JdbcTemplate jdbcTemplate,
+                         PlatformTransactionManager transactionManager,
+                         MeterRegistry meterRegistry,
+                         @Value("${risk-index.enabled:true}") boolean enabled,
+                         @Value("${risk-index.fetch-size:10000}") int fetchSize,
+                         @Value("${risk-index.filter.enabled:true}") boolean filterEnabled,
+                         @Value("${risk-index.filter.false-positive-rate:0.01}") double filterFalsePositiveRate,
+                         @Value("${risk-index.snapshot.path:}") String snapshotPath) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.enabled = enabled;
+        this.fetchSize = fetchSize;
+        this.filterEnabled = filterEnabled;
+        this.filterFalsePositiveRate = filterFalsePositiveRate;
+        this.snapshotPath = snapshotPath;
+
+        FunctionCounter.builder("iban.risk.filter.checks", this, index -> index.filterCount(true))
+            .tag("result", "positive")
+            .description("Risky IBAN filter checks that required the authoritative lookup")
+            .register(meterRegistry);
+        FunctionCounter.builder("iban.risk.filter.checks", this, index -> index.filterCount(false))
+            .tag("result", "negative")
+            .description("Risky IBAN filter checks that ruled out BLOCK and REVIEW")
+            .register(meterRegistry);
+        Gauge.builder("iban.risk.index.entries", this, IbanRiskIndex::size)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Loads the table once the application is up, from the snapshot file when one
+     * is configured and still usable; lookups fall back to the database until this completes.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled && !filterEnabled) {
+            logger.info("IBAN risk index disabled, risk lookups will query the database");
+            return;
+        }
+        if (loadSnapshot()) {
+            return;
+        }
+        try {
+            reload();
+        } catch (Exception e) {
+            logger.warn("Failed to load IBAN risk index, risk lookups will query the database: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Rebuilds the table and filter from the database and swaps them in, discarding
+     * applied changes. Called on startup and by the change feed once the overlay
+     * grows too large.
+     */
+    public void reload() {
+        long start = System.currentTimeMillis();
+        // Taken before the scan: changes from later transactions are replayed on top
+        long watermark = currentTransactionHorizon(jdbcTemplate);
+        State loaded = loadState(watermark, enabled, filterEnabled);
+        this.state = loaded;
+        logger.info("IBAN risk index loaded {} entries ({} KB off-heap), risky filter {} KB, in {} ms",
+            loaded.table != null ? loaded.table.count : 0,
+            loaded.table != null ? loaded.table.memoryBytes() / 1024 : 0,
+            loaded.filter != null ? loaded.filter.memoryBytes() / 1024 : 0,
+            System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Writes the current database contents to a snapshot file.
+     * @return number of IBANs written
+     */
+    public int exportSnapshot(Path target) throws IOException {
+        long watermark = currentTransactionHorizon(jdbcTemplate);
+        Timestamp highWater = jdbcTemplate.queryForObject("SELECT MAX(updated_at) FROM risk.iban_risk_lookup", Timestamp.class);
+        Table exported = loadState(watermark, true, false).table;
+        IbanRiskSnapshot.write(target, exported, watermark, highWater != null ? highWater.getTime() : -1);
+        return exported.count + exported.unpackable.size();
+    }
+
+    private boolean loadSnapshot() {
+        if (snapshotPath == null || snapshotPath.isBlank()) {
+            return false;
+        }
+        Path path = Path.of(snapshotPath);
+        if (!Files.isReadable(path)) {
+            logger.info("IBAN risk snapshot {} not found, loading from the database", path);
+            return false;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            IbanRiskSnapshot snapshot = IbanRiskSnapshot.read(path);
+            // The change feed replays everything after the snapshot, unless it has been pruned past it
+            Long prunedThrough = jdbcTemplate.queryForObject(
+                "SELECT pruned_through_txid FROM risk.iban_risk_change_retention", Long.class);
+            if (prunedThrough != null && snapshot.watermark <= prunedThrough) {
+                logger.warn("IBAN risk snapshot {} is older than the retained change feed, loading from the database", path);
+                return false;
+            }
+            RiskyIbanFilter filter = filterEnabled ? buildFilter(snapshot.table) : null;
+            this.state = new State(enabled ? snapshot.table : null, filter, snapshot.watermark);
+            logger.info("IBAN risk index mapped {} entries from snapshot {} (updated through {}) in {} ms",
+                snapshot.table.count, path, Instant.ofEpochMilli(snapshot.highWaterUpdatedAt),
+                System.currentTimeMillis() - start);
+            return true;
+        } catch (Exception e) {
+            logger.warn("Failed to load IBAN risk snapshot {}, loading from the database: {}", path, e.getMessage());
+            return false;
+        }
+    }
+
+    private RiskyIbanFilter buildFilter(Table source) {
+        long riskyRows = 0;
+        for (int i = 0; i < source.count; i++) {
+            if (isRisky(source.levelAt(i))) {
+                riskyRows++;
+            }
+        }
+        for (String riskLevel : source.unpackable.values()) {
+            if (isRisky(riskLevel)) {
+                riskyRows++;
+            }
+        }
+        // Headroom for IBANs flagged after startup
+        RiskyIbanFilter filter = RiskyIbanFilter.create(riskyRows + Math.max(1024, riskyRows / 10), filterFalsePositiveRate);
+        for (int i = 0; i < source.count; i++) {
+            if (isRisky(source.levelAt(i))) {
+                filter.add(source.ibanAt(i));
+            }
+        }
+        for (Map.Entry<String, String> entry : source.unpackable.entrySet()) {
+            if (isRisky(entry.getValue())) {
+                filter.add(entry.getKey());
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * @return true once the index has been loaded and can answer lookups
+     */
+    public boolean isReady() {
+        State current = state;
+        return current != null && current.table != null;
+    }
+
+    /**
+     * Looks up the risk level of an IBAN.
+     * @param iban The IBAN to look up
+     * @return the stored risk level, or null if the IBAN is not listed
+     * @throws IllegalStateException if the index is not loaded yet
+     */
+    public String lookup(String iban) {
+        State current = state;
+        if (current == null || current.table == null) {
+            throw new IllegalStateException("IBAN risk index is not loaded");
+        }
+        if (iban == null) {
+            return null;
+        }
+        Change change = current.changes.get(iban);
+        if (change != null) {
+            return change.riskLevel;
+        }
+        return current.table.lookup(iban);
+    }
+
+    /**
+     * @return true once the risky IBAN filter has been built
+     */
+    public boolean isFilterReady() {
+        State current = state;
+        return current != null && current.filter != null;
+    }
+
+    /**
+     * Checks the risky IBAN filter. A false answer means the IBAN is not listed as
+     * BLOCK or REVIEW (or any other non-GOOD level); it may be GOOD or not listed at all.
+     * @throws IllegalStateException if the filter is not built yet
+     */
+    public boolean mightBeRisky(String iban) {
+        State current = state;
+        if (current == null || current.filter == null) {
+            throw new IllegalStateException("Risky IBAN filter is not built");
+        }
+        return current.filter.mightContain(iban);
+    }
+
+    /**
+     * Applies one row of the change feed. Only the feed thread calls this.
+     * IBANs that become risky are added to the filter; IBANs that stop being risky
+     * are removed, which needs the previous level and so only happens when the
+     * table is loaded. Without it cleared IBANs stay positive until the next reload.
+     * @param changeId Id of the change row; older changes than the one applied are ignored
+     * @param iban The changed IBAN
+     * @param riskLevel The new risk level, or null if the IBAN was removed
+     * @return true if the change was applied
+     */
+    public boolean applyChange(long changeId, String iban, String riskLevel) {
+        State current = state;
+        if (current == null || iban == null) {
+            return false;
+        }
+        Change applied = current.changes.get(iban);
+        if (applied != null && applied.id >= changeId) {
+            return false;
+        }
+        boolean knownBefore = applied != null || current.table != null;
+        String before = applied != null ? applied.riskLevel
+            : current.table != null ? current.table.lookup(iban) : null;
+        current.changes.put(iban, new Change(changeId, riskLevel));
+
+        if (current.filter != null) {
+            boolean wasRisky = isRisky(before);
+            boolean nowRisky = isRisky(riskLevel);
+            if (nowRisky && !(knownBefore && wasRisky)) {
+                current.filter.add(iban);
+            } else if (!nowRisky && knownBefore && wasRisky) {
+                current.filter.remove(iban);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the transaction horizon the loaded table is consistent with, or -1 if not loaded
+     */
+    public long getWatermark() {
+        State current = state;
+        return current != null ? current.watermark : -1;
+    }
+
+    /**
+     * @return true once the table or the filter has been loaded and can take changes
+     */
+    public boolean isLoaded() {
+        return state != null;
+    }
+
+    /**
+     * @return number of IBANs served from the change overlay rather than the table
+     */
+    public int pendingChangeCount() {
+        State current = state;
+        return current != null ? current.changes.size() : 0;
+    }
+
+    private double filterCount(boolean positive) {
+        State current = state;
+        if (current == null || current.filter == null) {
+            return 0;
+        }
+        return positive ? current.filter.getPositiveCount() : current.filter.getNegativeCount();
+    }
+
+    public int size() {
+        State current = state;
+        return current != null && current.table != null
+            ? current.table.count + current.table.unpackable.size() : 0;
+    }
+
+    public long memoryBytes() {
+        State current = state;
+        return current != null && current.table != null ? current.table.memoryBytes() : 0;
+    }
+
+    /**
+     * Oldest transaction still running; every change from an earlier transaction
+     * is committed or rolled back and therefore final.
+     */
+    static long currentTransactionHorizon(JdbcTemplate jdbcTemplate) {
+        Long horizon = jdbcTemplate.queryForObject("SELECT txid_snapshot_xmin(txid_current_snapshot())", Long.class);
+        return horizon != null ? horizon : 0;
+    }
+
+    private static boolean isRisky(String riskLevel) {
+        return riskLevel != null && !"GOOD".equals(riskLevel);
+    }
+
+    private State loadState(long watermark, boolean withTable, boolean withFilter) {
+        Map<String, Object> stats = jdbcTemplate.queryForMap("""
+            SELECT COUNT(*) AS row_count,
+                   COUNT(*) FILTER (WHERE risk_level <> 'GOOD') AS risky_count,
+                   COALESCE(MAX(LENGTH(iban)), 0) AS max_length
+            FROM risk.iban_risk_lookup
+            """);
+        int expectedRows = ((Number) stats.get("row_count")).intValue();
+        long riskyRows = ((Number) stats.get("risky_count")).longValue();
+        int maxLength = ((Number) stats.get("max_length")).intValue();
+
+        TableBuilder builder = withTable ? new TableBuilder(wordsFor(maxLength), expectedRows) : null;
+        // Headroom for IBANs flagged after startup
+        RiskyIbanFilter filter = withFilter
+            ? RiskyIbanFilter.create(riskyRows + Math.max(1024, riskyRows / 10), filterFalsePositiveRate)
+            : null;
+
+        String sql = withTable
+            ? "SELECT iban, risk_level FROM risk.iban_risk_lookup ORDER BY iban COLLATE \"C\""
+            : "SELECT iban, risk_level FROM risk.iban_risk_lookup WHERE risk_level <> 'GOOD'";
+
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(fetchSize);
+        // PostgreSQL only streams with a cursor inside a transaction
+        readOnlyTransaction.executeWithoutResult(status -> streaming.query(sql, rs -> {
+            String iban = rs.getString(1);
+            String riskLevel = rs.getString(2);
+            if (builder != null) {
+                builder.add(iban, riskLevel);
+            }
+            if (filter != null && iban != null && isRisky(riskLevel)) {
+                filter.add(iban);
+            }
+        }));
+
+        return new State(builder != null ? builder.build() : null, filter, watermark);
+    }
+
+    static int wordsFor(int length) {
+        return Math.max(1, (length + CHARS_PER_WORD - 1) / CHARS_PER_WORD);
+    }
+
+    /**
+     * Maps 0-9 and A-Z onto 1..36 so packed words sort like the strings themselves;
+     * 0 is left for padding.
+     */
+    static int encodeChar(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0' + 1;
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A' + 11;
+        }
+        return -1;
+    }
+
+    static char decodeChar(int code) {
+        return code <= 10 ? (char) ('0' + code - 1) : (char) ('A' + code - 11);
+    }
+
+    /**
+     * Packs an IBAN into the given words.
+     * @return false if the IBAN is too long or contains characters outside [0-9A-Z]
+     */
+    static boolean pack(String iban, long[] words) {
+        int length = iban.length();
+        if (length > words.length * CHARS_PER_WORD) {
+            return false;
+        }
+        for (int w = 0; w < words.length; w++) {
+            long word = 0;
+            for (int i = 0; i < CHARS_PER_WORD; i++) {
+                int pos = w * CHARS_PER_WORD + i;
+                int code = 0;
+                if (pos < length) {
+                    code = encodeChar(iban.charAt(pos));
+                    if (code < 0) {
+                        return false;
+                    }
+                }
+                word = (word << BITS_PER_CHAR) | code;
+            }
+            words[w] = word;
+        }
+        return true;
+    }
+
+    /**
+     * A loaded table and filter together with the changes applied since they were read.
+     */
+    static final class State {
+        final Table table;
+        final RiskyIbanFilter filter;
+        final long watermark;
+        final ConcurrentHashMap<String, Change> changes = new ConcurrentHashMap<>();
+
+        State(Table table, RiskyIbanFilter filter, long watermark) {
+            this.table = table;
+            this.filter = filter;
+            this.watermark = watermark;
+        }
+    }
+
+    static final class Change {
+        final long id;
+        final String riskLevel;
+
+        Change(long id, String riskLevel) {
+            this.id = id;
+            this.riskLevel = riskLevel;
+        }
+    }
+
+    /**
+     * Immutable, sorted record table: keyWords longs of packed IBAN followed by one risk code byte.
+     */
+    static final class Table {
+        final ByteBuffer records;
+        final int keyWords;
+        final int recordSize;
+        final int count;
+        final String[] levels;
+        // Rows that cannot be packed (lowercase, separators, over-long) are kept verbatim
+        final Map<String, String> unpackable;
+
+        Table(ByteBuffer records, int keyWords, int count, String[] levels, Map<String, String> unpackable) {
+            this.records = records;
+            this.keyWords = keyWords;
+            this.recordSize = keyWords * Long.BYTES + 1;
+            this.count = count;
+            this.levels = levels;
+            this.unpackable = unpackable;
+        }
+
+        String lookup(String iban) {
+            if (iban == null) {
+                return null;
+            }
+            long[] key = new long[keyWords];
+            if (!pack(iban, key)) {
+                return unpackable.get(iban);
+            }
+            int index = find(key);
+            return index >= 0 ? levelAt(index) : null;
+        }
+
+        int find(long[] key) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = compareAt(mid, key);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        int compareAt(int index, long[] key) {
+            int base = index * recordSize;
+            for (int w = 0; w < keyWords; w++) {
+                int cmp = Long.compare(records.getLong(base + w * Long.BYTES), key[w]);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return 0;
+        }
+
+        String levelAt(int index) {
+            int code = records.get(index * recordSize + keyWords * Long.BYTES) & 0xFF;
+            return levels[code - 1];
+        }
+
+        String ibanAt(int index) {
+            int base = index * recordSize;
+            StringBuilder iban = new StringBuilder(keyWords * CHARS_PER_WORD);
+            for (int w = 0; w < keyWords; w++) {
+                long word = records.getLong(base + w * Long.BYTES);
+                for (int i = CHARS_PER_WORD - 1; i >= 0; i--) {
+                    int code = (int) (word >>> (i * BITS_PER_CHAR)) & 0x3F;
+                    if (code == 0) {
+                        return iban.toString();
+                    }
+                    iban.append(decodeChar(code));
+                }
+            }
+            return iban.toString();
+        }
+
+        long memoryBytes() {
+            return (long) count * recordSize;
+        }
+    }
+
+    /**
+     * Appends rows in IBAN order and produces a {@link Table}.
+     */
+    static final class TableBuilder {
+        private final int keyWords;
+        private final int recordSize;
+        private final long[] key;
+        private final long[] previous;
+        private final List<String> levels = new ArrayList<>();
+        private final Map<String, String> unpackable = new HashMap<>();
+        private ByteBuffer records;
+        private int count;
+
+        TableBuilder(int keyWords, int expectedRows) {
+            this.keyWords = keyWords;
+            this.recordSize = keyWords * Long.BYTES + 1;
+            this.key = new long[keyWords];
+            this.previous = new long[keyWords];
+            // Leave some headroom for rows inserted between the count and the scan
+            this.records = ByteBuffer.allocateDirect((expectedRows + Math.max(1024, expectedRows / 100)) * recordSize);
+        }
+
+        void add(String iban, String riskLevel) {
+            if (iban == null || riskLevel == null) {
+                return;
+            }
+            if (!pack(iban, key)) {
+                unpackable.put(iban, riskLevel);
+                return;
+            }
+            if (count > 0 && compare(key, previous) <= 0) {
+                throw new IllegalStateException("IBAN rows are not in packed key order");
+            }
+            ensureCapacity();
+            int base = count * recordSize;
+            for (int w = 0; w < keyWords; w++) {
+                records.putLong(base + w * Long.BYTES, key[w]);
+            }
+            records.put(base + keyWords * Long.BYTES, codeFor(riskLevel));
+            System.arraycopy(key, 0, previous, 0, keyWords);
+            count++;
+        }
+
+        Table build() {
+            return new Table(records, keyWords, count, levels.toArray(new String[0]), unpackable);
+        }
+
+        private byte codeFor(String riskLevel) {
+            int index = levels.indexOf(riskLevel);
+            if (index < 0) {
+                if (levels.size() == 255) {
+                    throw new IllegalStateException("Too many distinct risk levels");
+                }
+                levels.add(riskLevel);
+                index = levels.size() - 1;
+            }
+            return (byte) (index + 1);
+        }
+
+        private void ensureCapacity() {
+            if ((count + 1) * recordSize <= records.capacity()) {
+                return;
+            }
+            ByteBuffer larger = ByteBuffer.allocateDirect(records.capacity() * 2);
+            larger.put(records.duplicate().clear().limit(count * recordSize));
+            records = larger;
+        }
+
+        private static int compare(long[] a, long[] b) {
+            for (int i = 0; i < a.length; i++) {
+                int cmp = Long.compare(a[i], b[i]);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.microservices.accounts.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counting Bloom filter over IBANs listed with a risk level other than GOOD.
+ * Four-bit counters packed sixteen to a long allow removal when an IBAN is cleared;
+ * a counter that saturates at 15 is never decremented again, which can only cost
+ * extra false positives. Updates are lock-free CAS on the counter words.
+ */
+public class RiskyIbanFilter {
+
+    private static final int COUNTER_BITS = 4;
+    private static final int COUNTERS_PER_WORD = Long.SIZE / COUNTER_BITS;
+    private static final long COUNTER_MAX = (1L << COUNTER_BITS) - 1;
+
+    private final AtomicLongArray words;
+    private final long numCounters;
+    private final int numHashes;
+    private final LongAdder positives = new LongAdder();
+    private final LongAdder negatives = new LongAdder();
+
+    private RiskyIbanFilter(long numCounters, int numHashes) {
+        long wordCount = (numCounters + COUNTERS_PER_WORD - 1) / COUNTERS_PER_WORD;
+        if (wordCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Filter too large: " + numCounters + " counters");
+        }
+        this.words = new AtomicLongArray((int) wordCount);
+        this.numCounters = wordCount * COUNTERS_PER_WORD;
+        this.numHashes = numHashes;
+    }
+
+    /**
+     * Sizes a filter for the given load using the standard Bloom filter formulas.
+     * @param expectedInsertions Number of IBANs expected in the filter
+     * @param falsePositiveRate Target false positive probability, e.g. 0.01
+     */
+    public static RiskyIbanFilter create(long expectedInsertions, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1: " + falsePositiveRate);
+        }
+        long n = Math.max(1, expectedInsertions);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int k = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+        return new RiskyIbanFilter(Math.max(COUNTERS_PER_WORD, m), k);
+    }
+
+    public void add(String iban) {
+        long hash = hash(iban);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= numHashes; i++) {
+            increment(index(h1 + i * h2));
+        }
+    }
+
+    /**
+     * Removes an IBAN; only valid for IBANs that were previously added.
+     */
+    public void remove(String iban) {
+        long hash = hash(iban);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= numHashes; i++) {
+            decrement(index(h1 + i * h2));
+        }
+    }
+
+    /**
+     * @return false if the IBAN is definitely not listed as risky, true if it may be
+     */
+    public boolean mightContain(String iban) {
+        long hash = hash(iban);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= numHashes; i++) {
+            if (counterAt(index(h1 + i * h2)) == 0) {
+                negatives.increment();
+                return false;
+            }
+        }
+        positives.increment();
+        return true;
+    }
+
+    public long getPositiveCount() {
+        return positives.sum();
+    }
+
+    public long getNegativeCount() {
+        return negatives.sum();
+    }
+
+    public long memoryBytes() {
+        return (long) words.length() * Long.BYTES;
+    }
+
+    public int getNumHashes() {
+        return numHashes;
+    }
+
+    long index(int combinedHash) {
+        // Flip negative values so the modulo stays in range
+        int positive = combinedHash < 0 ? ~combinedHash : combinedHash;
+        return positive % numCounters;
+    }
+
+    long counterAt(long counter) {
+        int shift = (int) (counter % COUNTERS_PER_WORD) * COUNTER_BITS;
+        return (words.get((int) (counter / COUNTERS_PER_WORD)) >>> shift) & COUNTER_MAX;
+    }
+
+    private void increment(long counter) {
+        int word = (int) (counter / COUNTERS_PER_WORD);
+        int shift = (int) (counter % COUNTERS_PER_WORD) * COUNTER_BITS;
+        while (true) {
+            long current = words.get(word);
+            long value = (current >>> shift) & COUNTER_MAX;
+            if (value == COUNTER_MAX || words.compareAndSet(word, current, current + (1L << shift))) {
+                return;
+            }
+        }
+    }
+
+    private void decrement(long counter) {
+        int word = (int) (counter / COUNTERS_PER_WORD);
+        int shift = (int) (counter % COUNTERS_PER_WORD) * COUNTER_BITS;
+        while (true) {
+            long current = words.get(word);
+            long value = (current >>> shift) & COUNTER_MAX;
+            // Saturated counters have lost their exact count and must stay set
+            if (value == 0 || value == COUNTER_MAX || words.compareAndSet(word, current, current - (1L << shift))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a over the IBAN characters, finished with the MurmurHash3 mixer.
+     */
+    static long hash(String iban) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < iban.length(); i++) {
+            h ^= iban.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -2,49 +2,105 @@ package com.microservices.accounts.service;
 
 import com.microservices.accounts.model.SupplierPaymentRequest;
 import com.microservices.accounts.model.FraudDetectionResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
 import org.springframework.stereotype.Service;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Service
 public class SupplierFraudDetectionService {
 
     private final JdbcTemplate jdbcTemplate;
     private final SqlInjectionProtectionService sqlInjectionProtection;
+    private final IbanRiskIndex ibanRiskIndex;
+    // Runs IBAN risk queries, so waiting for a pooled connection counts against the deadline too
+    private final ExecutorService queryExecutor = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("iban-query-", 0).factory());
+    // Cancels IBAN risk queries that outlive the deadline
+    private final ScheduledExecutorService queryCanceller = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("iban-query-canceller").daemon().factory());
+    private final MeterRegistry meterRegistry;
+    private final Counter filterSkippedLookups;
     private final int maxResponseTimeMs;
+    private final long minQueryTimeoutMs;
 
     public SupplierFraudDetectionService(JdbcTemplate jdbcTemplate,
                                        SqlInjectionProtectionService sqlInjectionProtection,
-                                       @Value("${accounts.max-response-time-ms:200}") int maxResponseTimeMs) {
+                                       IbanRiskIndex ibanRiskIndex,
+                                       MeterRegistry meterRegistry,
+                                       @Value("${accounts.max-response-time-ms:200}") int maxResponseTimeMs,
+                                       @Value("${accounts.deadline.min-query-timeout-ms:5}") long minQueryTimeoutMs) {
         this.jdbcTemplate = jdbcTemplate;
         this.sqlInjectionProtection = sqlInjectionProtection;
+        this.ibanRiskIndex = ibanRiskIndex;
+        this.meterRegistry = meterRegistry;
+        this.filterSkippedLookups = Counter.builder("iban.risk.filter.skipped.lookups")
+            .description("IBAN risk lookups answered by the risky IBAN filter alone")
+            .register(meterRegistry);
         this.maxResponseTimeMs = maxResponseTimeMs;
+        this.minQueryTimeoutMs = minQueryTimeoutMs;
     }
 
+    /**
+     * Scores a supplier payment within accounts.max-response-time-ms. The in-memory
+     * checks always run; the IBAN risk query is the one call that can blow the budget,
+     * so it only gets the time that is left. If it does not finish in time, the check
+     * is listed as skipped in the response and keeps the payment from being approved
+     * outright.
+     */
     public FraudDetectionResponse detectFraud(SupplierPaymentRequest request) {
         long startTime = System.currentTimeMillis();
+        Deadline deadline = Deadline.afterMillis(maxResponseTimeMs);
+        List<String> skippedChecks = new ArrayList<>();
         
         try {
             // Validate input for SQL injection attacks
             validateInput(request);
             
+            // Detect anomalies that do not depend on the IBAN risk level
+            List<String> anomalies = detectAnomalies(request);
+            
             // Check IBAN against risky database
-            String ibanRiskLevel = checkIbanRisk(request.getSupplierIban());
+            String ibanRiskLevel = checkIbanRisk(request.getSupplierIban(),
+                anomalies.isEmpty(), deadline, skippedChecks);
             
-            // Detect anomalies
-            List<String> anomalies = detectAnomalies(request, ibanRiskLevel);
+            // IBAN-based anomalies
+            if ("REVIEW".equals(ibanRiskLevel) || "BLOCK".equals(ibanRiskLevel)) {
+                anomalies.add(0, "Supplier IBAN flagged as high risk in crowdsourced database");
+            }
             
             // Determine fraud status and recommendation
             String fraudStatus = determineFraudStatus(ibanRiskLevel, anomalies);
             String riskLevel = determineRiskLevel(ibanRiskLevel, anomalies);
             String recommendation = determineRecommendation(fraudStatus, riskLevel);
             
+            // A partial answer must not approve a payment the skipped check could have stopped
+            String reason = null;
+            if (!skippedChecks.isEmpty() && "APPROVE".equals(recommendation)) {
+                recommendation = "REVIEW";
+                reason = "Checks skipped to meet the response time budget: " + String.join(", ", skippedChecks);
+            }
+            
             long totalResponseTime = System.currentTimeMillis() - startTime;
             
-            return new FraudDetectionResponse(
+            FraudDetectionResponse response = new FraudDetectionResponse(
                 request.getInvoiceId(),
                 request.getSupplierIban(),
                 request.getSupplierName(),
@@ -54,6 +110,9 @@ public class SupplierFraudDetectionService {
                 recommendation,
                 (int) totalResponseTime
             );
+            response.setSkippedChecks(skippedChecks);
+            response.setReason(reason);
+            return response;
             
         } catch (SecurityException e) {
             // SQL injection attempt detected
@@ -125,31 +184,115 @@ public class SupplierFraudDetectionService {
         }
     }
 
-    private String checkIbanRisk(String supplierIban) {
+    private String checkIbanRisk(String supplierIban, boolean noOtherAnomalies,
+                                 Deadline deadline, List<String> skippedChecks) {
         try {
             // Additional validation before query
             if (!sqlInjectionProtection.isValidIban(supplierIban)) {
                 return "UNKNOWN";
             }
             
-            // Use parameterized query (already safe, but extra validation)
-            String sql = "SELECT risk_level FROM risk.iban_risk_lookup WHERE iban = ?";
-            String riskLevel = jdbcTemplate.queryForObject(sql, String.class, supplierIban);
+            // GOOD and unlisted IBANs score the same when nothing else is anomalous,
+            // so a negative from the risky filter settles it without a lookup
+            if (noOtherAnomalies && ibanRiskIndex.isFilterReady() && !ibanRiskIndex.mightBeRisky(supplierIban)) {
+                filterSkippedLookups.increment();
+                return "UNKNOWN";
+            }
+            
+            // Served from memory once the index is loaded
+            if (ibanRiskIndex.isReady()) {
+                String riskLevel = ibanRiskIndex.lookup(supplierIban);
+                return riskLevel != null ? riskLevel : "UNKNOWN";
+            }
+            
+            // The database fallback only gets the time that is left
+            long timeoutMs = deadline.remainingMillis();
+            if (timeoutMs < minQueryTimeoutMs) {
+                skipCheck("iban-risk", skippedChecks);
+                return "UNKNOWN";
+            }
+            String riskLevel = queryIbanRiskLevel(supplierIban, deadline);
             return riskLevel != null ? riskLevel : "UNKNOWN";
         } catch (Exception e) {
+            if (isQueryTimeout(e)) {
+                skipCheck("iban-risk", skippedChecks);
+                return "UNKNOWN";
+            }
             // Log potential security issues
             sqlInjectionProtection.logSecurityEvent("Database Query Error", e.getMessage());
             return "UNKNOWN";
         }
     }
 
-    private List<String> detectAnomalies(SupplierPaymentRequest request, String ibanRiskLevel) {
-        List<String> anomalies = new ArrayList<>();
-        
-        // IBAN-based anomalies
-        if ("REVIEW".equals(ibanRiskLevel) || "BLOCK".equals(ibanRiskLevel)) {
-            anomalies.add("Supplier IBAN flagged as high risk in crowdsourced database");
+    /**
+     * Runs the IBAN risk query, giving up once the remaining budget is spent. The
+     * query runs on a virtual thread and is waited for only until the deadline, so
+     * a pool with no idle connection cannot hold the request for the pool's
+     * connection-timeout. Once it has a connection, the statement is cancelled at
+     * the deadline: JDBC query timeouts only count whole seconds, and a
+     * statement_timeout needs a transaction and a round-trip of its own.
+     * @throws QueryTimeoutException if the deadline passed first
+     */
+    private String queryIbanRiskLevel(String supplierIban, Deadline deadline) {
+        // Use parameterized query (already safe, but extra validation)
+        String sql = "SELECT risk_level FROM risk.iban_risk_lookup WHERE iban = ?";
+        Future<String> query = queryExecutor.submit(() -> jdbcTemplate.execute(sql, (PreparedStatementCallback<String>) statement -> {
+            statement.setString(1, supplierIban);
+            ScheduledFuture<?> cancel = queryCanceller.schedule(() -> {
+                try {
+                    statement.cancel();
+                } catch (SQLException e) {
+                    // The query finished or the connection went away
+                }
+            }, deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getString(1) : null;
+            } finally {
+                cancel.cancel(false);
+            }
+        }));
+        try {
+            return query.get(deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Interrupts a wait for a connection; a running statement is cancelled by its own timer
+            query.cancel(true);
+            throw new QueryTimeoutException("IBAN risk query did not finish within the deadline");
+        } catch (InterruptedException e) {
+            query.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new QueryTimeoutException("Interrupted waiting for the IBAN risk query");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
         }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        queryExecutor.shutdownNow();
+        queryCanceller.shutdownNow();
+    }
+
+    private static boolean isQueryTimeout(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            // 57014 = query_canceled, raised when the query is cancelled
+            if (cause instanceof QueryTimeoutException
+                    || (cause instanceof SQLException sqlException && "57014".equals(sqlException.getSQLState()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void skipCheck(String check, List<String> skippedChecks) {
+        skippedChecks.add(check);
+        meterRegistry.counter("accounts.checks.skipped", "check", check).increment();
+    }
+
+    private List<String> detectAnomalies(SupplierPaymentRequest request) {
+        List<String> anomalies = new ArrayList<>();
         
         // Amount-based anomalies
         if (request.getPaymentAmount() != null) {
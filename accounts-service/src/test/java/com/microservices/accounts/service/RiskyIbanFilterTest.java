@@ -0,0 +1,149 @@
+package com.microservices.accounts.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RiskyIbanFilterTest {
+
+    @Test
+    void containsEveryAddedIban() {
+        RiskyIbanFilter filter = RiskyIbanFilter.create(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add(iban(i));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain(iban(i)), iban(i));
+        }
+    }
+
+    @Test
+    void falsePositiveRateStaysNearTarget() {
+        RiskyIbanFilter filter = RiskyIbanFilter.create(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add(iban(i));
+        }
+        int falsePositives = 0;
+        for (int i = 10_000; i < 110_000; i++) {
+            if (filter.mightContain(iban(i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 2_000, "false positives: " + falsePositives);
+        assertEquals(falsePositives, filter.getPositiveCount());
+        assertEquals(100_000 - falsePositives, filter.getNegativeCount());
+    }
+
+    @Test
+    void removeUndoesAdd() {
+        RiskyIbanFilter filter = RiskyIbanFilter.create(1_000, 0.01);
+        for (int i = 0; i < 1_000; i++) {
+            filter.add(iban(i));
+        }
+        for (int i = 0; i < 1_000; i++) {
+            filter.remove(iban(i));
+        }
+        for (int i = 0; i < 1_000; i++) {
+            assertFalse(filter.mightContain(iban(i)), iban(i));
+        }
+    }
+
+    @Test
+    void counterSaturatesAtFifteenAndStaysSet() {
+        // One hash over a single word of counters
+        RiskyIbanFilter filter = RiskyIbanFilter.create(1, 0.5);
+        assertEquals(1, filter.getNumHashes());
+        String iban = iban(1);
+        long counter = counterOf(filter, iban);
+
+        for (int i = 0; i < 40; i++) {
+            filter.add(iban);
+        }
+        assertEquals(15, filter.counterAt(counter));
+        assertOtherCountersZero(filter, counter);
+
+        // A saturated counter has lost its count, so removals leave it set
+        for (int i = 0; i < 40; i++) {
+            filter.remove(iban);
+        }
+        assertEquals(15, filter.counterAt(counter));
+        assertTrue(filter.mightContain(iban));
+    }
+
+    @Test
+    void decrementStopsAtZeroWithoutBorrowing() {
+        RiskyIbanFilter filter = RiskyIbanFilter.create(1, 0.5);
+        String iban = iban(2);
+        long counter = counterOf(filter, iban);
+        String neighbour = findIbanWithCounter(filter, (counter + 1) % 16);
+        filter.add(neighbour);
+
+        filter.add(iban);
+        filter.add(iban);
+        filter.add(iban);
+        assertEquals(3, filter.counterAt(counter));
+        filter.remove(iban);
+        assertEquals(2, filter.counterAt(counter));
+        filter.remove(iban);
+        filter.remove(iban);
+        filter.remove(iban);
+        filter.remove(iban);
+        assertEquals(0, filter.counterAt(counter));
+        assertFalse(filter.mightContain(iban));
+        assertEquals(1, filter.counterAt((counter + 1) % 16));
+    }
+
+    @Test
+    void everyCounterInAWordIsIndependent() {
+        RiskyIbanFilter filter = RiskyIbanFilter.create(1, 0.5);
+        List<String> ibans = new ArrayList<>();
+        for (int c = 0; c < 16; c++) {
+            ibans.add(findIbanWithCounter(filter, c));
+        }
+        for (int c = 0; c < 16; c++) {
+            for (int i = 0; i < c; i++) {
+                filter.add(ibans.get(c));
+            }
+        }
+        for (int c = 0; c < 16; c++) {
+            assertEquals(Math.min(c, 15), filter.counterAt(c), "counter " + c);
+        }
+    }
+
+    @Test
+    void rejectsInvalidFalsePositiveRate() {
+        assertThrows(IllegalArgumentException.class, () -> RiskyIbanFilter.create(100, 0));
+        assertThrows(IllegalArgumentException.class, () -> RiskyIbanFilter.create(100, 1));
+    }
+
+    private static long counterOf(RiskyIbanFilter filter, String iban) {
+        long hash = RiskyIbanFilter.hash(iban);
+        return filter.index((int) hash + (int) (hash >>> 32));
+    }
+
+    private static String findIbanWithCounter(RiskyIbanFilter filter, long counter) {
+        for (int i = 0; ; i++) {
+            if (counterOf(filter, iban(i)) == counter) {
+                return iban(i);
+            }
+        }
+    }
+
+    private static void assertOtherCountersZero(RiskyIbanFilter filter, long counter) {
+        for (int c = 0; c < 16; c++) {
+            if (c != counter) {
+                assertEquals(0, filter.counterAt(c), "counter " + c);
+            }
+        }
+    }
+
+    private static String iban(int i) {
+        return String.format("DE%02d%018d", i % 97, i);
+    }
+}
@@ -0,0 +1,165 @@
+package com.microservices.gateway.config;
+
+import com.microservices.gateway.config.RateLimitingConfig.Policy;
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Which quota a request draws on and how much it costs, resolved from tables
+ * built once at startup so a request costs a map lookup or two instead of a walk
+ * through URI checks.
+ *
+ * <p>Clients are limited per user when they present a valid token, per API key
+ * when they present a key listed in rate-limit.api-keys, and per IP otherwise,
+ * each with its own {@link Policy}. Only listed keys count: an unknown key would
+ * otherwise buy a fresh bucket per request.
+ *
+ * <p>Endpoint costs come from rate-limit.endpoint-costs, a comma separated list
+ * of {@code METHOD /path=cost} entries. The method may be {@code *} for any
+ * method and the path may end in {@code /**} to cover everything below it; an
+ * exact path wins over a prefix, the longest prefix over a shorter one. The cost
+ * is a number of tokens, 0 for endpoints that are not limited at all, or the name
+ * of a request parameter holding the number of items in a batch request. Anything
+ * not listed costs 1.
+ */
+public class RateLimitPolicies {
+
+    private static final List<String> METHODS = List.of("GET", "HEAD", "POST", "PUT", "PATCH", "DELETE", "OPTIONS");
+    private static final Cost DEFAULT_COST = new Cost(1, null);
+
+    private final Policy ipPolicy;
+    private final Policy userPolicy;
+    private final Policy apiKeyPolicy;
+    // API key -> client name, used in the bucket key so the key itself never reaches Redis
+    private final Map<String, String> clientsByApiKey = new HashMap<>();
+    // method -> path -> cost
+    private final Map<String, Map<String, Cost>> exactCosts = new HashMap<>();
+    private final Map<String, Map<String, Cost>> prefixCosts = new HashMap<>();
+
+    public RateLimitPolicies(Policy ipPolicy, Policy userPolicy, Policy apiKeyPolicy,
+                             String apiKeys, String endpointCosts) {
+        this.ipPolicy = ipPolicy;
+        this.userPolicy = userPolicy;
+        this.apiKeyPolicy = apiKeyPolicy;
+        for (String entry : split(apiKeys)) {
+            // Keys may well contain '=' themselves (base64), client names may not
+            int separator = entry.indexOf('=');
+            if (separator <= 0 || separator == entry.length() - 1) {
+                throw new IllegalArgumentException("Expected name=key in rate-limit.api-keys");
+            }
+            clientsByApiKey.put(entry.substring(separator + 1).trim(), entry.substring(0, separator).trim());
+        }
+        compileCosts(split(endpointCosts));
+    }
+
+    public Policy getIpPolicy() {
+        return ipPolicy;
+    }
+
+    public Policy getUserPolicy() {
+        return userPolicy;
+    }
+
+    public Policy getApiKeyPolicy() {
+        return apiKeyPolicy;
+    }
+
+    /**
+     * @return the name configured for the key, or null if the key is not listed
+     */
+    public String clientForApiKey(String apiKey) {
+        return apiKey == null ? null : clientsByApiKey.get(apiKey);
+    }
+
+    /**
+     * @return the tokens the request costs; 0 if it is not rate limited
+     */
+    public int costOf(HttpServletRequest request) {
+        String method = request.getMethod();
+        String path = request.getRequestURI();
+        Cost cost = null;
+        Map<String, Cost> exact = exactCosts.get(method);
+        if (exact != null) {
+            cost = exact.get(path);
+        }
+        Map<String, Cost> prefixes = prefixCosts.get(method);
+        if (cost == null && prefixes != null) {
+            for (int end = path.length(); cost == null && end > 0; end = path.lastIndexOf('/', end - 1)) {
+                cost = prefixes.get(path.substring(0, end));
+            }
+        }
+        return (cost != null ? cost : DEFAULT_COST).of(request);
+    }
+
+    private void compileCosts(List<String> entries) {
+        // Entries for every method first, so an entry for a single method overrides them
+        for (boolean anyMethod : new boolean[] {true, false}) {
+            for (String entry : entries) {
+                int space = entry.indexOf(' ');
+                int equals = entry.lastIndexOf('=');
+                if (space <= 0 || equals < space) {
+                    throw new IllegalArgumentException("Expected METHOD /path=cost in rate-limit.endpoint-costs: " + entry);
+                }
+                String method = entry.substring(0, space).toUpperCase();
+                if (method.equals("*") != anyMethod) {
+                    continue;
+                }
+                String path = entry.substring(space + 1, equals).trim();
+                Cost cost = Cost.parse(entry.substring(equals + 1).trim());
+                Map<String, Map<String, Cost>> table = exactCosts;
+                if (path.endsWith("/**")) {
+                    path = path.substring(0, path.length() - 3);
+                    table = prefixCosts;
+                }
+                for (String m : anyMethod ? METHODS : List.of(method)) {
+                    table.computeIfAbsent(m, k -> new HashMap<>()).put(path, cost);
+                }
+            }
+        }
+    }
+
+    private static List<String> split(String list) {
+        if (list == null || list.isBlank()) {
+            return List.of();
+        }
+        return Arrays.stream(list.split(","))
+            .map(String::trim)
+            .filter(entry -> !entry.isEmpty())
+            .toList();
+    }
+
+    private static final class Cost {
+        private final int tokens;
+        // Request parameter holding the batch size, if the cost depends on it
+        private final String parameter;
+
+        private Cost(int tokens, String parameter) {
+            this.tokens = tokens;
+            this.parameter = parameter;
+        }
+
+        static Cost parse(String value) {
+            try {
+                return new Cost(Math.max(0, Integer.parseInt(value)), null);
+            } catch (NumberFormatException e) {
+                return new Cost(1, value);
+            }
+        }
+
+        int of(HttpServletRequest request) {
+            if (parameter == null) {
+                return tokens;
+            }
+            String items = request.getParameter(parameter);
+            try {
+                return items == null ? tokens : Math.max(1, Integer.parseInt(items.trim()));
+            } catch (NumberFormatException e) {
+                return tokens;
+            }
+        }
+    }
+}
@@ -1,10 +1,27 @@
 package com.microservices.gateway.config;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import java.time.Duration;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Configuration
 public class RateLimitingConfig {
@@ -15,41 +32,380 @@ public class RateLimitingConfig {
     @Value("${rate-limit.burst-capacity:100}")
     private int burstCapacity;
 
+    @Value("${rate-limit.user.requests-per-minute:600}")
+    private int userRequestsPerMinute;
+
+    @Value("${rate-limit.user.burst-capacity:1000}")
+    private int userBurstCapacity;
+
+    @Value("${rate-limit.api-key.requests-per-minute:3000}")
+    private int apiKeyRequestsPerMinute;
+
+    @Value("${rate-limit.api-key.burst-capacity:5000}")
+    private int apiKeyBurstCapacity;
+
+    @Value("${rate-limit.api-keys:}")
+    private String apiKeys;
+
+    @Value("${rate-limit.endpoint-costs:}")
+    private String endpointCosts;
+
+    @Value("${rate-limit.redis-retry-ms:5000}")
+    private long redisRetryMs;
+
+    @Value("${rate-limit.lease-size:20}")
+    private int leaseSize;
+
+    @Value("${rate-limit.idle-bucket-ms:300000}")
+    private long idleBucketMs;
+
     @Bean
-    public RateLimitingService rateLimitingService(StringRedisTemplate redisTemplate) {
-        return new RateLimitingService(redisTemplate, requestsPerMinute, burstCapacity);
+    public RateLimitingService rateLimitingService(StringRedisTemplate redisTemplate, MeterRegistry meterRegistry) {
+        return new RateLimitingService(redisTemplate, meterRegistry, idleBucketMs, redisRetryMs);
     }
 
+    @Bean
+    public RateLimitPolicies rateLimitPolicies() {
+        return new RateLimitPolicies(
+            new Policy("ip", requestsPerMinute, burstCapacity, leaseSize),
+            new Policy("user", userRequestsPerMinute, userBurstCapacity, leaseSize),
+            new Policy("api-key", apiKeyRequestsPerMinute, apiKeyBurstCapacity, leaseSize),
+            apiKeys, endpointCosts);
+    }
+
+    /**
+     * Token bucket per client: the client's {@link Policy} gives the refill rate and
+     * the bucket size. The bucket itself lives in Redis and is shared
+     * by every gateway instance, kept as GCRA (a single timestamp per client: the
+     * time the bucket will be full again) and read on the Redis clock, so instances
+     * with skewed clocks agree.
+     *
+     * <p>Instances do not ask Redis per request. Each one leases a batch of tokens
+     * for a client and hands them out locally with a compare-and-set; when the batch
+     * runs low, the next one is leased in the background. Only a client whose local
+     * tokens have run out waits for Redis, and once Redis has refused a client, it
+     * is turned away locally until its next token is due. Tokens leased but not used
+     * are lost to the client, so the cluster-wide limit holds to within a lease per
+     * instance.
+     *
+     * <p>If Redis is unavailable, each instance limits on its own, at the full rate,
+     * and Redis is retried after redis-retry-ms.
+     */
     public static class RateLimitingService {
+
+        private static final Logger logger = LoggerFactory.getLogger(RateLimitingService.class);
+
+        // KEYS[1] bucket; ARGV[1] ms per token, ARGV[2] burst, ARGV[3] tokens wanted
+        // Grants as many as are available, up to the number wanted.
+        // Returns {tokens granted, ms until the next token if none, ms until full, tokens left in Redis}
+        @SuppressWarnings("unchecked")
+        private static final RedisScript<List<Long>> LEASE = (RedisScript<List<Long>>) (RedisScript<?>)
+            new DefaultRedisScript<>("""
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local interval = tonumber(ARGV[1])
+            local tolerance = interval * tonumber(ARGV[2])
+            local tat = tonumber(redis.call('GET', KEYS[1])) or now
+            if tat < now then
+                tat = now
+            end
+            local granted = math.min(tonumber(ARGV[3]), math.floor((tolerance - (tat - now)) / interval))
+            if granted <= 0 then
+                return {0, tat + interval - tolerance - now, tat - now, 0}
+            end
+            tat = tat + granted * interval
+            redis.call('SET', KEYS[1], tat, 'PX', tat - now)
+            return {granted, 0, tat - now, math.floor((tolerance - (tat - now)) / interval)}
+            """, List.class);
+
         private final StringRedisTemplate redisTemplate;
-        private final int requestsPerMinute;
+        private final long idleBucketMs;
+        private final long redisRetryMs;
+        private final ConcurrentHashMap<String, LocalBucket> buckets = new ConcurrentHashMap<>();
+        private final ExecutorService leaseExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("rate-limit-lease-", 0).factory());
+        private final Counter allowed;
+        private final Counter rejected;
+        private final Counter leases;
+        private final Counter localOnly;
+
+        private volatile long unavailableUntil;
 
-        public RateLimitingService(StringRedisTemplate redisTemplate, int requestsPerMinute, int burstCapacity) {
+        public RateLimitingService(StringRedisTemplate redisTemplate, MeterRegistry meterRegistry,
+                                   long idleBucketMs, long redisRetryMs) {
             this.redisTemplate = redisTemplate;
-            this.requestsPerMinute = requestsPerMinute;
-            // burstCapacity parameter kept for future use
+            this.idleBucketMs = idleBucketMs;
+            this.redisRetryMs = redisRetryMs;
+            this.allowed = Counter.builder("rate.limit.requests")
+                .tag("result", "allowed")
+                .description("Requests checked against the rate limit")
+                .register(meterRegistry);
+            this.rejected = Counter.builder("rate.limit.requests")
+                .tag("result", "rejected")
+                .description("Requests checked against the rate limit")
+                .register(meterRegistry);
+            this.leases = Counter.builder("rate.limit.leases")
+                .description("Token batches leased from Redis")
+                .register(meterRegistry);
+            this.localOnly = Counter.builder("rate.limit.local.only")
+                .description("Requests limited locally because Redis was unavailable")
+                .register(meterRegistry);
+            Gauge.builder("rate.limit.buckets", buckets, Map::size)
+                .description("Clients with a local token bucket")
+                .register(meterRegistry);
         }
 
-        public boolean isAllowed(String key) {
-            String redisKey = "rate_limit:" + key;
-            String currentCount = redisTemplate.opsForValue().get(redisKey);
-            
-            if (currentCount == null) {
-                redisTemplate.opsForValue().set(redisKey, "1", Duration.ofMinutes(1));
-                return true;
+        public Decision tryAcquire(Policy policy, String key) {
+            return tryAcquire(policy, key, 1);
+        }
+
+        /**
+         * Takes tokens from the client's bucket, normally without leaving the JVM. A
+         * cost larger than the bucket is charged as a full bucket.
+         */
+        public Decision tryAcquire(Policy policy, String key, int cost) {
+            cost = Math.max(1, Math.min(cost, policy.getBurstCapacity()));
+            long now = System.currentTimeMillis();
+            LocalBucket bucket = buckets.computeIfAbsent(key, k -> new LocalBucket());
+            bucket.lastUsed = now;
+
+            if (now < unavailableUntil) {
+                return acquireLocally(policy, bucket, cost, now);
+            }
+            if (bucket.take(cost)) {
+                if (bucket.tokens.get() < (policy.getLeaseSize() + 1) / 2 && now >= bucket.nextTokenAt) {
+                    leaseInBackground(policy, key, bucket);
+                }
+                return allow(policy, bucket, now);
+            }
+            if (now < bucket.nextTokenAt) {
+                // Refused by Redis a moment ago, no point asking again yet
+                return reject(policy, bucket.nextTokenAt - now, bucket.fullInMs);
+            }
+            // Out of leased tokens: lease on this thread
+            if (!lease(policy, key, bucket, Math.max(policy.getLeaseSize(), cost))) {
+                return acquireLocally(policy, bucket, cost, now);
+            }
+            if (bucket.take(cost)) {
+                return allow(policy, bucket, now);
             }
-            
-            int count = Integer.parseInt(currentCount);
-            if (count >= requestsPerMinute) {
+            return reject(policy, Math.max(bucket.nextTokenAt - now, policy.getIntervalMs()), bucket.fullInMs);
+        }
+
+        public boolean isAllowed(Policy policy, String key) {
+            return tryAcquire(policy, key).isAllowed();
+        }
+
+        /**
+         * Remaining is what the client could still spend across the cluster: the tokens
+         * left in Redis at the last lease, plus what has refilled since, plus the tokens
+         * this instance holds and has not handed out.
+         */
+        private Decision allow(Policy policy, LocalBucket bucket, long now) {
+            allowed.increment();
+            long refilled = Math.max(0, now - bucket.redisRemainingAt) / policy.getIntervalMs();
+            long inRedis = Math.min(policy.getBurstCapacity(), bucket.redisRemaining + refilled);
+            long remaining = Math.min(policy.getBurstCapacity(), inRedis + bucket.tokens.get());
+            return new Decision(true, policy.getBurstCapacity(), remaining, 0, bucket.fullInMs);
+        }
+
+        private Decision reject(Policy policy, long retryAfterMs, long resetMs) {
+            rejected.increment();
+            return new Decision(false, policy.getBurstCapacity(), 0, retryAfterMs, resetMs);
+        }
+
+        private void leaseInBackground(Policy policy, String key, LocalBucket bucket) {
+            if (!bucket.leasing.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                leaseExecutor.execute(() -> {
+                    try {
+                        lease(policy, key, bucket, policy.getLeaseSize());
+                    } finally {
+                        bucket.leasing.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                bucket.leasing.set(false);
+            }
+        }
+
+        /**
+         * @return false if Redis is unavailable
+         */
+        private boolean lease(Policy policy, String key, LocalBucket bucket, int wanted) {
+            try {
+                List<Long> result = redisTemplate.execute(LEASE, List.of("rate_limit:{" + key + "}"),
+                    Long.toString(policy.getIntervalMs()), Integer.toString(policy.getBurstCapacity()),
+                    Integer.toString(wanted));
+                long granted = result.get(0);
+                long now = System.currentTimeMillis();
+                bucket.fullInMs = result.get(2);
+                bucket.redisRemaining = result.get(3);
+                bucket.redisRemainingAt = now;
+                if (granted > 0) {
+                    bucket.tokens.addAndGet(granted);
+                    bucket.nextTokenAt = 0;
+                    leases.increment();
+                } else {
+                    bucket.nextTokenAt = now + result.get(1);
+                }
+                return true;
+            } catch (Exception e) {
+                unavailableUntil = System.currentTimeMillis() + redisRetryMs;
+                logger.warn("Rate limiting falling back to local buckets for {} ms: {}", redisRetryMs, e.getMessage());
                 return false;
             }
-            
-            redisTemplate.opsForValue().increment(redisKey);
-            if (count == 0) {
-                redisTemplate.expire(redisKey, Duration.ofMinutes(1));
+        }
+
+        // The same GCRA as the Redis script, on this instance only
+        private Decision acquireLocally(Policy policy, LocalBucket bucket, int cost, long now) {
+            localOnly.increment();
+            long intervalMs = policy.getIntervalMs();
+            long toleranceMs = policy.getToleranceMs();
+            while (true) {
+                long tat = bucket.localTat.get();
+                long newTat = Math.max(tat, now) + intervalMs * cost;
+                long allowAt = newTat - toleranceMs;
+                if (now < allowAt) {
+                    return reject(policy, allowAt - now, Math.max(tat, now) - now);
+                }
+                if (bucket.localTat.compareAndSet(tat, newTat)) {
+                    allowed.increment();
+                    return new Decision(true, policy.getBurstCapacity(), (toleranceMs - (newTat - now)) / intervalMs,
+                        0, newTat - now);
+                }
+            }
+        }
+
+        /**
+         * Forgets clients that have gone quiet; their unused leased tokens go with them.
+         */
+        @Scheduled(fixedDelayString = "${rate-limit.idle-bucket-ms:300000}")
+        public void evictIdle() {
+            long idleSince = System.currentTimeMillis() - idleBucketMs;
+            buckets.values().removeIf(bucket -> bucket.lastUsed < idleSince);
+        }
+
+        public int size() {
+            return buckets.size();
+        }
+
+        @PreDestroy
+        public void shutdown() {
+            leaseExecutor.shutdownNow();
+        }
+
+        static final class LocalBucket {
+            // Tokens leased from Redis and not yet handed out
+            final AtomicLong tokens = new AtomicLong();
+            // Local GCRA state, used only while Redis is unavailable
+            final AtomicLong localTat = new AtomicLong();
+            final AtomicBoolean leasing = new AtomicBoolean();
+            // When Redis will next have a token for this client, after refusing a lease
+            volatile long nextTokenAt;
+            volatile long fullInMs;
+            // Tokens left in Redis after the last lease, and when that was
+            volatile long redisRemaining;
+            volatile long redisRemainingAt;
+            volatile long lastUsed;
+
+            boolean take(int cost) {
+                while (true) {
+                    long available = tokens.get();
+                    if (available < cost) {
+                        return false;
+                    }
+                    if (tokens.compareAndSet(available, available - cost)) {
+                        return true;
+                    }
+                }
             }
-            
-            return true;
+        }
+    }
+
+    /**
+     * Rate and bucket size for one kind of client.
+     */
+    public static final class Policy {
+        private final String name;
+        private final long intervalMs;
+        private final int burstCapacity;
+        private final long toleranceMs;
+        private final int leaseSize;
+
+        public Policy(String name, int requestsPerMinute, int burstCapacity, int leaseSize) {
+            this.name = name;
+            this.intervalMs = Math.max(1, 60_000L / Math.max(1, requestsPerMinute));
+            this.burstCapacity = Math.max(1, burstCapacity);
+            this.toleranceMs = intervalMs * this.burstCapacity;
+            this.leaseSize = Math.max(1, Math.min(leaseSize, this.burstCapacity));
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /** Milliseconds per token */
+        public long getIntervalMs() {
+            return intervalMs;
+        }
+
+        public int getBurstCapacity() {
+            return burstCapacity;
+        }
+
+        long getToleranceMs() {
+            return toleranceMs;
+        }
+
+        /** Tokens leased from Redis at a time */
+        public int getLeaseSize() {
+            return leaseSize;
+        }
+    }
+
+    /**
+     * Outcome of one rate limit check, with what the client needs to pace itself.
+     */
+    public static final class Decision {
+        private final boolean allowed;
+        private final int limit;
+        private final long remaining;
+        private final long retryAfterMs;
+        private final long resetMs;
+
+        public Decision(boolean allowed, int limit, long remaining, long retryAfterMs, long resetMs) {
+            this.allowed = allowed;
+            this.limit = limit;
+            this.remaining = Math.max(0, remaining);
+            this.retryAfterMs = retryAfterMs;
+            this.resetMs = resetMs;
+        }
+
+        public boolean isAllowed() {
+            return allowed;
+        }
+
+        /** Bucket size */
+        public int getLimit() {
+            return limit;
+        }
+
+        /** Requests that could be made right now */
+        public long getRemaining() {
+            return remaining;
+        }
+
+        /** How long until the next request would be allowed; 0 if allowed */
+        public long getRetryAfterMs() {
+            return retryAfterMs;
+        }
+
+        /** How long until the bucket is full again */
+        public long getResetMs() {
+            return resetMs;
         }
     }
 }
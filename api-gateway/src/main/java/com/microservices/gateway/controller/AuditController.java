@@ -0,0 +1,170 @@
+package com.microservices.gateway.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microservices.gateway.model.AuditLogCursor;
+import com.microservices.gateway.model.AuditLogPage;
+import com.microservices.gateway.security.VerifiedToken;
+import com.microservices.gateway.service.AuditService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+/**
+ * Audit logs of the calling user. Nobody holds a role that may read other users'
+ * logs, so the user is always taken from the verified token, never from the request.
+ */
+@RestController
+@RequestMapping("/api/v1/audit")
+public class AuditController {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditController.class);
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    // The export stops itself at export-timeout-ms; the request only times out if it is stuck
+    private static final long EXPORT_REQUEST_GRACE_MS = 5000;
+
+    private final AuditService auditService;
+    private final ObjectMapper objectMapper;
+    private final int maxPageSize;
+    private final int exportMaxRangeDays;
+    private final long exportTimeoutMs;
+
+    public AuditController(AuditService auditService,
+                           ObjectMapper objectMapper,
+                           @Value("${audit.query.max-page-size:500}") int maxPageSize,
+                           @Value("${audit.query.export-max-range-days:31}") int exportMaxRangeDays,
+                           @Value("${audit.query.export-timeout-ms:120000}") long exportTimeoutMs) {
+        this.auditService = auditService;
+        this.objectMapper = objectMapper;
+        this.maxPageSize = maxPageSize;
+        this.exportMaxRangeDays = exportMaxRangeDays;
+        this.exportTimeoutMs = exportTimeoutMs;
+    }
+
+    /**
+     * The caller's audit logs newest first, one page at a time. Pass the returned
+     * nextCursor to get the next page. The count is the planner's estimate unless
+     * exact=true, or unless the first page already holds every log.
+     */
+    @GetMapping("/logs")
+    public ResponseEntity<Map<String, Object>> getAuditLogs(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(defaultValue = "false") boolean exact,
+            HttpServletRequest request) {
+
+        Map<String, Object> response = new HashMap<>();
+        UUID userId = callerId(request);
+        if (userId == null) {
+            response.put("error", "Invalid or expired token");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(response);
+        }
+        if (limit < 1 || limit > maxPageSize) {
+            response.put("error", "Limit must be between 1 and " + maxPageSize);
+            return ResponseEntity.badRequest().body(response);
+        }
+
+        AuditLogCursor after;
+        try {
+            after = cursor != null && !cursor.isEmpty() ? AuditLogCursor.decode(cursor) : null;
+        } catch (IllegalArgumentException e) {
+            response.put("error", "Invalid cursor");
+            return ResponseEntity.badRequest().body(response);
+        }
+
+        AuditLogPage page = auditService.getAuditLogs(userId, after, limit);
+        response.put("logs", page.getLogs());
+        response.put("nextCursor", page.getNextCursor());
+        if (after == null && page.getNextCursor() == null) {
+            response.put("count", page.getLogs().size());
+            response.put("countExact", true);
+        } else if (exact) {
+            response.put("count", auditService.getAuditLogCount(userId));
+            response.put("countExact", true);
+        } else {
+            response.put("count", auditService.getApproximateAuditLogCount(userId));
+            response.put("countExact", false);
+        }
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Streams the caller's audit logs in [from, to), oldest first, as newline-delimited
+     * JSON. Rows are written as they are read, so a large range is never held in
+     * memory. The range may span at most export-max-range-days, ending now and
+     * reaching back that far by default. An export still running after
+     * export-timeout-ms is cut short; rows come oldest first, so the client can
+     * continue from the last one it got.
+     */
+    @GetMapping("/logs/export")
+    public WebAsyncTask<Void> exportAuditLogs(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+
+        UUID userId = callerId(request);
+        if (userId == null) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid or expired token");
+        }
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from : end.minusDays(exportMaxRangeDays);
+        if (!start.isBefore(end) || start.plusDays(exportMaxRangeDays).isBefore(end)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                "from must be before to and at most " + exportMaxRangeDays + " days earlier");
+        }
+
+        Callable<Void> export = () -> {
+            response.setContentType(NDJSON.toString());
+            OutputStream buffered = new BufferedOutputStream(response.getOutputStream(), 64 * 1024);
+            try {
+                long rows = auditService.exportAuditLogs(userId, start, end, exportTimeoutMs, auditLog -> {
+                    try {
+                        buffered.write(objectMapper.writeValueAsBytes(auditLog));
+                        buffered.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                logger.debug("Exported {} audit log rows", rows);
+            } catch (UncheckedIOException e) {
+                // The client went away; the cursor and its connection are released with the transaction
+                logger.info("Audit log export aborted: {}", e.getCause().getMessage());
+                return null;
+            } catch (QueryTimeoutException e) {
+                logger.warn("Audit log export cut short: {}", e.getMessage());
+            }
+            buffered.flush();
+            return null;
+        };
+        return new WebAsyncTask<>(exportTimeoutMs + EXPORT_REQUEST_GRACE_MS, export);
+    }
+
+    private static UUID callerId(HttpServletRequest request) {
+        // Verified by JwtAuthenticationFilter before the request got here
+        Object verified = request.getAttribute(VerifiedToken.REQUEST_ATTRIBUTE);
+        return verified instanceof VerifiedToken token ? token.getUserId() : null;
+    }
+}
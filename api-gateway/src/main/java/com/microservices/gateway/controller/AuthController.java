@@ -2,6 +2,7 @@ package com.microservices.gateway.controller;
 
 import com.microservices.gateway.model.LoginRequest;
 import com.microservices.gateway.model.User;
+import com.microservices.gateway.security.VerifiedToken;
 import com.microservices.gateway.service.AuditService;
 import com.microservices.gateway.service.JwtService;
 import com.microservices.gateway.service.SqlInjectionProtectionService;
@@ -135,7 +136,8 @@ public class AuthController {
         
         try {
             String token = extractTokenFromHeader(authHeader);
-            UUID userId = jwtService.getUserIdFromToken(token);
+            VerifiedToken verified = jwtService.verify(request, token);
+            UUID userId = verified != null ? verified.getUserId() : null;
             
             jwtService.revokeToken(token);
             
@@ -169,11 +171,11 @@ public class AuthController {
         
         try {
             String token = extractTokenFromHeader(authHeader);
-            boolean isValid = jwtService.validateToken(token);
+            VerifiedToken verified = jwtService.verify(request, token);
             
             Map<String, Object> response = new HashMap<>();
-            if (isValid) {
-                UUID userId = jwtService.getUserIdFromToken(token);
+            if (verified != null) {
+                UUID userId = verified.getUserId();
                 response.put("valid", true);
                 response.put("userId", userId);
                 
@@ -2,6 +2,7 @@ package com.microservices.gateway.controller;
 
 import com.microservices.gateway.model.FraudDetectionRequest;
 import com.microservices.gateway.model.FraudDetectionResponse;
+import com.microservices.gateway.security.VerifiedToken;
 import com.microservices.gateway.service.FraudDetectionService;
 import com.microservices.gateway.service.AuditService;
 import com.microservices.gateway.service.JwtService;
@@ -82,33 +83,24 @@ public class FraudDetectionController {
             // Validate JWT token if provided
             if (authHeader != null && !authHeader.isEmpty()) {
                 String token = extractTokenFromHeader(authHeader);
-                if (!jwtService.validateToken(token)) {
+                VerifiedToken verified = jwtService.verify(httpRequest, token);
+                if (verified == null) {
                     responseStatus = 401;
                     response = FraudDetectionResponse.builder()
                         .invoiceId(request.getInvoiceId())
                         .riskStatus("ERROR")
                         .reason("Invalid or expired authentication token")
                         .build();
-                    
-                    auditService.logRequest(null, httpRequest.getRequestURI(), "POST", 
-                        getClientIpAddress(httpRequest), httpRequest.getHeader("User-Agent"), 
-                        request.toString(), responseStatus, (int)(System.currentTimeMillis() - startTime));
-                    
                     return ResponseEntity.status(responseStatus).body(response);
                 }
 
-                userId = jwtService.getUserIdFromToken(token);
+                userId = verified.getUserId();
             }
 
             // Perform fraud detection analysis
             response = fraudDetectionService.analyzePayment(request);
             responseStatus = 200;
 
-            // Log successful validation
-            auditService.logRequest(userId, httpRequest.getRequestURI(), "POST", 
-                getClientIpAddress(httpRequest), httpRequest.getHeader("User-Agent"), 
-                request.toString(), responseStatus, (int)(System.currentTimeMillis() - startTime));
-
         } catch (IllegalArgumentException e) {
             responseStatus = 401;
             response = FraudDetectionResponse.builder()
@@ -124,7 +116,7 @@ public class FraudDetectionController {
                 .reason("Internal server error: " + e.getMessage())
                 .build();
         } finally {
-            // Log the request
+            // Log the request, once, whichever way it ended
             if (response == null) {
                 response = FraudDetectionResponse.builder()
                     .invoiceId(request.getInvoiceId())
@@ -183,12 +175,13 @@ public class FraudDetectionController {
             // Validate JWT token if provided (optional for testing)
             if (authHeader != null && !authHeader.isEmpty()) {
                 String token = extractTokenFromHeader(authHeader);
-                if (!jwtService.validateToken(token)) {
+                VerifiedToken verified = jwtService.verify(httpRequest, token);
+                if (verified == null) {
                     responseStatus = 401;
                     response.put("error", "Invalid or expired authentication token");
                     return ResponseEntity.status(responseStatus).body(response);
                 }
-                userId = jwtService.getUserIdFromToken(token);
+                userId = verified.getUserId();
             }
 
             List<Map<String, Object>> payments = new ArrayList<>();
@@ -278,12 +271,13 @@ public class FraudDetectionController {
             // Validate JWT token if provided (optional for testing)
             if (authHeader != null && !authHeader.isEmpty()) {
                 String token = extractTokenFromHeader(authHeader);
-                if (!jwtService.validateToken(token)) {
+                VerifiedToken verified = jwtService.verify(httpRequest, token);
+                if (verified == null) {
                     responseStatus = 401;
                     response.put("error", "Invalid or expired authentication token");
                     return ResponseEntity.status(responseStatus).body(response);
                 }
-                userId = jwtService.getUserIdFromToken(token);
+                userId = verified.getUserId();
             } else {
                 // For testing purposes, allow unauthenticated access
                 userId = null;
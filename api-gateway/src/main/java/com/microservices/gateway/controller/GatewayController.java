@@ -1,5 +1,6 @@
 package com.microservices.gateway.controller;
 
+import com.microservices.gateway.security.VerifiedToken;
 import com.microservices.gateway.service.ApiGatewayService;
 import com.microservices.gateway.service.AuditService;
 import com.microservices.gateway.service.JwtService;
@@ -64,18 +65,14 @@ public class GatewayController {
         try {
             // Validate JWT token
             String token = extractTokenFromHeader(authHeader);
-            if (!jwtService.validateToken(token)) {
+            VerifiedToken verified = jwtService.verify(request, token);
+            if (verified == null) {
                 responseStatus = 401;
                 responseBody = "{\"error\": \"Invalid or expired token\"}";
-                
-                auditService.logRequest(null, request.getRequestURI(), method.name(), 
-                    getClientIpAddress(request), request.getHeader("User-Agent"), 
-                    requestBody, responseStatus, (int)(System.currentTimeMillis() - startTime));
-                
                 return ResponseEntity.status(responseStatus).body(responseBody);
             }
 
-            userId = jwtService.getUserIdFromToken(token);
+            userId = verified.getUserId();
 
             // Forward request to accounts service
             String path = extractPathFromRequest(request);
@@ -91,7 +88,7 @@ public class GatewayController {
             responseStatus = 500;
             responseBody = "{\"error\": \"Service unavailable\", \"message\": \"" + e.getMessage() + "\"}";
         } finally {
-            // Log the request
+            // Log the request, once, whichever way it ended
             auditService.logRequest(userId, request.getRequestURI(), method.name(), 
                 getClientIpAddress(request), request.getHeader("User-Agent"), 
                 requestBody, responseStatus, (int)(System.currentTimeMillis() - startTime));
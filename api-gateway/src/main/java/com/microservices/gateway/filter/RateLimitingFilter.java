@@ -1,55 +1,88 @@
 package com.microservices.gateway.filter;
 
+import com.microservices.gateway.config.RateLimitPolicies;
+import com.microservices.gateway.config.RateLimitingConfig.Decision;
 import com.microservices.gateway.config.RateLimitingConfig.RateLimitingService;
-import jakarta.servlet.Filter;
+import com.microservices.gateway.security.VerifiedToken;
+import com.microservices.gateway.service.JwtService;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
-import jakarta.servlet.ServletRequest;
-import jakarta.servlet.ServletResponse;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
 
+/**
+ * Applies the per-client rate limit. Registered both as a servlet filter and in
+ * the security chain, so it guards against running twice on the same request.
+ *
+ * <p>Clients are told apart by user, then API key, then IP (see
+ * {@link RateLimitPolicies}). This runs before {@code JwtAuthenticationFilter}, so
+ * it verifies the bearer token itself; the result stays on the request and is not
+ * verified again.
+ */
 @Component
 @Order(1)
-public class RateLimitingFilter implements Filter {
+public class RateLimitingFilter extends OncePerRequestFilter {
 
-    @Autowired
-    private RateLimitingService rateLimitingService;
+    private final RateLimitingService rateLimitingService;
+    private final RateLimitPolicies policies;
+    private final JwtService jwtService;
+
+    public RateLimitingFilter(RateLimitingService rateLimitingService, RateLimitPolicies policies,
+                              JwtService jwtService) {
+        this.rateLimitingService = rateLimitingService;
+        this.policies = policies;
+        this.jwtService = jwtService;
+    }
 
     @Override
-    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
-            throws IOException, ServletException {
-        
-        HttpServletRequest httpRequest = (HttpServletRequest) request;
-        HttpServletResponse httpResponse = (HttpServletResponse) response;
-
-        // Skip rate limiting for health checks and data fetching endpoints
-        String requestUri = httpRequest.getRequestURI();
-        if (requestUri.contains("/actuator/health") || 
-            requestUri.contains("/api/v1/fraud-detection/ibans/random") ||
-            requestUri.contains("/api/v1/fraud-detection/health")) {
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+
+        // Health checks and the like cost nothing and are not limited
+        int cost = policies.costOf(request);
+        if (cost == 0) {
             chain.doFilter(request, response);
             return;
         }
 
-        // Get client IP for rate limiting
-        String clientIp = getClientIpAddress(httpRequest);
-        
-        // Check if request is allowed
-        if (rateLimitingService.isAllowed(clientIp)) {
+        Decision decision = acquire(request, cost);
+        response.setHeader("X-RateLimit-Limit", Integer.toString(decision.getLimit()));
+        response.setHeader("X-RateLimit-Remaining", Long.toString(decision.getRemaining()));
+        response.setHeader("X-RateLimit-Reset", Long.toString(seconds(decision.getResetMs())));
+        if (decision.isAllowed()) {
             chain.doFilter(request, response);
         } else {
-            httpResponse.setStatus(429); // Too Many Requests
-            httpResponse.setContentType("application/json");
-            httpResponse.getWriter().write("{\"error\":\"Rate limit exceeded. Please try again later.\"}");
+            response.setStatus(429); // Too Many Requests
+            response.setHeader("Retry-After", Long.toString(seconds(decision.getRetryAfterMs())));
+            response.setContentType("application/json");
+            response.getWriter().write("{\"error\":\"Rate limit exceeded. Please try again later.\"}");
         }
     }
 
+    private Decision acquire(HttpServletRequest request, int cost) {
+        String authHeader = request.getHeader("Authorization");
+        if (authHeader != null && authHeader.startsWith("Bearer ")) {
+            VerifiedToken verified = jwtService.verify(request, authHeader.substring(7));
+            if (verified != null) {
+                return rateLimitingService.tryAcquire(policies.getUserPolicy(), "user:" + verified.getUserId(), cost);
+            }
+        }
+        String client = policies.clientForApiKey(request.getHeader("X-API-KEY"));
+        if (client != null) {
+            return rateLimitingService.tryAcquire(policies.getApiKeyPolicy(), "key:" + client, cost);
+        }
+        return rateLimitingService.tryAcquire(policies.getIpPolicy(), "ip:" + getClientIpAddress(request), cost);
+    }
+
+    private static long seconds(long millis) {
+        return (millis + 999) / 1000;
+    }
+
     private String getClientIpAddress(HttpServletRequest request) {
         String xForwardedFor = request.getHeader("X-Forwarded-For");
         if (xForwardedFor != null && !xForwardedFor.isEmpty()) {
@@ -0,0 +1,57 @@
+package com.microservices.gateway.model;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Position in the newest-first audit log order: the (created_at, id) of the last
+ * row a page returned. Clients get it as an opaque token and pass it back for the
+ * next page.
+ */
+public final class AuditLogCursor {
+
+    private final LocalDateTime createdAt;
+    private final UUID id;
+
+    public AuditLogCursor(LocalDateTime createdAt, UUID id) {
+        this.createdAt = createdAt;
+        this.id = id;
+    }
+
+    public static AuditLogCursor after(AuditLog auditLog) {
+        return new AuditLogCursor(auditLog.getCreatedAt(), auditLog.getId());
+    }
+
+    public String encode() {
+        String position = createdAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the token was not produced by {@link #encode()}
+     */
+    public static AuditLogCursor decode(String token) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = position.indexOf('|');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid audit log cursor");
+            }
+            return new AuditLogCursor(LocalDateTime.parse(position.substring(0, separator)),
+                UUID.fromString(position.substring(separator + 1)));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid audit log cursor", e);
+        }
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+}
@@ -0,0 +1,26 @@
+package com.microservices.gateway.model;
+
+import java.util.List;
+
+/**
+ * One page of audit logs, newest first, with the cursor for the next page
+ * (null when this is the last one).
+ */
+public final class AuditLogPage {
+
+    private final List<AuditLog> logs;
+    private final String nextCursor;
+
+    public AuditLogPage(List<AuditLog> logs, String nextCursor) {
+        this.logs = logs;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<AuditLog> getLogs() {
+        return logs;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
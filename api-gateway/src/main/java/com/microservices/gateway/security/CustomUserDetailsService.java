@@ -9,16 +9,32 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
 import java.util.Collections;
+import java.util.List;
 
 @Service
 public class CustomUserDetailsService implements UserDetailsService {
 
+    private static final List<SimpleGrantedAuthority> USER_AUTHORITIES =
+        Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER"));
+
     private final JwtService jwtService;
 
     public CustomUserDetailsService(JwtService jwtService) {
         this.jwtService = jwtService;
     }
 
+    /**
+     * The principal for a verified token, built from its claims alone. Deactivated
+     * users are turned away before this, when the token is verified.
+     */
+    public UserDetails loadUserByToken(VerifiedToken verified) {
+        return org.springframework.security.core.userdetails.User.builder()
+                .username(verified.getUsername())
+                .password("")
+                .authorities(USER_AUTHORITIES)
+                .build();
+    }
+
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
         User user = jwtService.findUserByUsername(username);
@@ -30,7 +46,7 @@ public class CustomUserDetailsService implements UserDetailsService {
         return org.springframework.security.core.userdetails.User.builder()
                 .username(user.getUsername())
                 .password(user.getPasswordHash())
-                .authorities(Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER")))
+                .authorities(USER_AUTHORITIES)
                 .accountExpired(false)
                 .accountLocked(false)
                 .credentialsExpired(false)
@@ -0,0 +1,52 @@
+package com.microservices.gateway.security;
+
+import io.jsonwebtoken.Claims;
+
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * A token whose signature, expiry and revocation status have been checked, with
+ * its claims. Produced once per request by {@link JwtAuthenticationFilter} and kept
+ * as a request attribute, so the controllers reuse it instead of parsing the token again.
+ */
+public final class VerifiedToken {
+
+    public static final String REQUEST_ATTRIBUTE = VerifiedToken.class.getName();
+
+    private final String token;
+    private final String fingerprint;
+    private final Claims claims;
+    private final UUID userId;
+
+    public VerifiedToken(String token, String fingerprint, Claims claims) {
+        this.token = token;
+        this.fingerprint = fingerprint;
+        this.claims = claims;
+        this.userId = UUID.fromString(claims.getSubject());
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public Claims getClaims() {
+        return claims;
+    }
+
+    public UUID getUserId() {
+        return userId;
+    }
+
+    public String getUsername() {
+        return claims.get("username", String.class);
+    }
+
+    public Date getExpiresAt() {
+        return claims.getExpiration();
+    }
+}
@@ -0,0 +1,246 @@
+package com.microservices.gateway.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes audit.audit_logs rows off the request path. Request threads hand events
+ * to a lock-free queue, bounded by a counter, and never wait: when the queue is
+ * full the event is dropped and counted. A background thread wakes when a batch
+ * has filled or the flush interval has passed and writes the batch as one
+ * multi-row INSERT. If the database rejects a batch for its data, the rows are
+ * retried one by one so a single bad row (an unparsable address, a deleted user)
+ * does not take the others with it.
+ */
+@Component
+public class AuditLogWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditLogWriter.class);
+
+    private static final String INSERT_PREFIX = """
+        INSERT INTO audit.audit_logs
+        (user_id, endpoint, method, ip_address, user_agent, request_body, response_status, response_time_ms, created_at)
+        VALUES\s""";
+    private static final String ROW = "(?, ?, ?, ?::inet, ?, ?, ?, ?, ?)";
+    private static final int COLUMNS = 9;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ConcurrentLinkedQueue<Event> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final long shutdownTimeoutMs;
+    private final String fullBatchSql;
+    private final Thread writerThread;
+
+    private final Counter flushed;
+    private final Counter overflowed;
+    private final Counter failed;
+
+    private volatile boolean running = true;
+
+    public AuditLogWriter(JdbcTemplate jdbcTemplate,
+                          MeterRegistry meterRegistry,
+                          @Value("${audit.writer.queue-capacity:10000}") int capacity,
+                          @Value("${audit.writer.batch-size:200}") int batchSize,
+                          @Value("${audit.writer.flush-interval-ms:500}") long flushIntervalMs,
+                          @Value("${audit.writer.shutdown-timeout-ms:5000}") long shutdownTimeoutMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        this.fullBatchSql = insertSql(batchSize);
+        this.writerThread = Thread.ofPlatform().name("audit-log-writer").daemon(true).unstarted(this::run);
+
+        Gauge.builder("audit.queue.depth", queued, AtomicInteger::get)
+            .description("Audit events waiting to be written")
+            .register(meterRegistry);
+        this.flushed = Counter.builder("audit.events.flushed")
+            .description("Audit events written to audit.audit_logs")
+            .register(meterRegistry);
+        this.overflowed = Counter.builder("audit.events.dropped")
+            .tag("reason", "overflow")
+            .description("Audit events not written to audit.audit_logs")
+            .register(meterRegistry);
+        this.failed = Counter.builder("audit.events.dropped")
+            .tag("reason", "failed")
+            .description("Audit events not written to audit.audit_logs")
+            .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        writerThread.start();
+    }
+
+    /**
+     * Queues an event; never blocks.
+     * @return false if the queue was full and the event was dropped
+     */
+    public boolean submit(UUID userId, String endpoint, String method, String ipAddress,
+                          String userAgent, String requestBody, Integer responseStatus, Integer responseTimeMs) {
+        int depth = queued.incrementAndGet();
+        if (depth > capacity) {
+            queued.decrementAndGet();
+            overflowed.increment();
+            return false;
+        }
+        queue.offer(new Event(userId, endpoint, method, ipAddress, userAgent, requestBody,
+            responseStatus, responseTimeMs, LocalDateTime.now()));
+        if (depth == batchSize) {
+            LockSupport.unpark(writerThread);
+        }
+        return true;
+    }
+
+    private void run() {
+        List<Event> batch = new ArrayList<>(batchSize);
+        while (running || queued.get() > 0) {
+            if (running && queued.get() < batchSize) {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+            Event event;
+            while (batch.size() < batchSize && (event = queue.poll()) != null) {
+                queued.decrementAndGet();
+                batch.add(event);
+            }
+            if (!batch.isEmpty()) {
+                try {
+                    write(batch);
+                } catch (RuntimeException e) {
+                    // Anything write() does not expect must not kill the only writer thread
+                    failed.increment(batch.size());
+                    logger.error("Failed to write {} audit log rows", batch.size(), e);
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    private void write(List<Event> batch) {
+        try {
+            insert(batch);
+            flushed.increment(batch.size());
+        } catch (DataIntegrityViolationException e) {
+            if (batch.size() == 1) {
+                failed.increment();
+                logger.warn("Audit log row for {} {} rejected: {}", batch.get(0).method, batch.get(0).endpoint,
+                    e.getMostSpecificCause().getMessage());
+                return;
+            }
+            for (Event event : batch) {
+                write(List.of(event));
+            }
+        } catch (DataAccessException e) {
+            failed.increment(batch.size());
+            logger.error("Failed to write {} audit log rows: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    private void insert(List<Event> batch) {
+        String sql = batch.size() == batchSize ? fullBatchSql : insertSql(batch.size());
+        jdbcTemplate.update(sql, ps -> {
+            int column = 0;
+            for (Event event : batch) {
+                event.bind(ps, column);
+                column += COLUMNS;
+            }
+        });
+    }
+
+    private static String insertSql(int rows) {
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX.length() + rows * (ROW.length() + 2)).append(INSERT_PREFIX);
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(ROW);
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Stops waiting for full batches and writes what is queued.
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            writerThread.interrupt();
+            logger.warn("Audit log writer did not drain within {} ms, {} events left", shutdownTimeoutMs, queued.get());
+        }
+    }
+
+    private static final class Event {
+        private final UUID userId;
+        private final String endpoint;
+        private final String method;
+        private final String ipAddress;
+        private final String userAgent;
+        private final String requestBody;
+        private final Integer responseStatus;
+        private final Integer responseTimeMs;
+        private final LocalDateTime createdAt;
+
+        Event(UUID userId, String endpoint, String method, String ipAddress, String userAgent,
+              String requestBody, Integer responseStatus, Integer responseTimeMs, LocalDateTime createdAt) {
+            this.userId = userId;
+            this.endpoint = endpoint;
+            this.method = method;
+            this.ipAddress = ipAddress;
+            this.userAgent = userAgent;
+            this.requestBody = requestBody;
+            this.responseStatus = responseStatus;
+            this.responseTimeMs = responseTimeMs;
+            this.createdAt = createdAt;
+        }
+
+        void bind(PreparedStatement ps, int offset) throws SQLException {
+            if (userId != null) {
+                ps.setObject(offset + 1, userId);
+            } else {
+                ps.setNull(offset + 1, Types.OTHER);
+            }
+            ps.setString(offset + 2, endpoint);
+            ps.setString(offset + 3, method);
+            ps.setString(offset + 4, ipAddress);
+            ps.setString(offset + 5, userAgent);
+            ps.setString(offset + 6, requestBody);
+            ps.setObject(offset + 7, responseStatus, Types.INTEGER);
+            ps.setObject(offset + 8, responseTimeMs, Types.INTEGER);
+            ps.setTimestamp(offset + 9, Timestamp.valueOf(createdAt));
+        }
+    }
+}
@@ -1,72 +1,162 @@
 package com.microservices.gateway.service;
 
 import com.microservices.gateway.model.AuditLog;
+import com.microservices.gateway.model.AuditLogCursor;
+import com.microservices.gateway.model.AuditLogPage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Service
 public class AuditService {
 
+    private static final Pattern PLAN_ROWS = Pattern.compile("rows=(\\d+)");
+
+    private static final String SELECT_COLUMNS = """
+        SELECT id, user_id, endpoint, method, ip_address, user_agent, request_body,
+               response_status, response_time_ms, created_at
+        FROM audit.audit_logs""";
+
     private final JdbcTemplate jdbcTemplate;
+    private final AuditLogWriter auditLogWriter;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int exportFetchSize;
 
-    public AuditService(JdbcTemplate jdbcTemplate) {
+    public AuditService(JdbcTemplate jdbcTemplate,
+                        AuditLogWriter auditLogWriter,
+                        PlatformTransactionManager transactionManager,
+                        @Value("${audit.query.export-fetch-size:1000}") int exportFetchSize) {
         this.jdbcTemplate = jdbcTemplate;
+        this.auditLogWriter = auditLogWriter;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.exportFetchSize = exportFetchSize;
     }
 
+    /**
+     * Records one request; written asynchronously in batches, so callers should
+     * log each request once, when its outcome is known
+     */
     public void logRequest(UUID userId, String endpoint, String method, String ipAddress, 
                           String userAgent, String requestBody, Integer responseStatus, 
                           Integer responseTimeMs) {
-        
-        String sql = """
-            INSERT INTO audit.audit_logs 
-            (user_id, endpoint, method, ip_address, user_agent, request_body, response_status, response_time_ms, created_at)
-            VALUES (?, ?, ?, ?::inet, ?, ?, ?, ?, ?)
-            """;
-        
-        jdbcTemplate.update(sql, userId, endpoint, method, ipAddress, userAgent, 
-                           requestBody, responseStatus, responseTimeMs, LocalDateTime.now());
+        auditLogWriter.submit(userId, endpoint, method, ipAddress, userAgent,
+                             requestBody, responseStatus, responseTimeMs);
     }
 
-    public List<AuditLog> getAuditLogs(UUID userId, int limit, int offset) {
-        String sql = """
-            SELECT id, user_id, endpoint, method, ip_address, user_agent, request_body, 
-                   response_status, response_time_ms, created_at
-            FROM audit.audit_logs 
-            WHERE user_id = ?
-            ORDER BY created_at DESC
-            LIMIT ? OFFSET ?
-            """;
-        
-        return jdbcTemplate.query(sql, new Object[]{userId, limit, offset}, auditLogRowMapper());
+    /**
+     * Returns the page of logs that follows the cursor, newest first. Each page
+     * starts from the previous page's last (created_at, id) through the index, so
+     * it costs the same however deep into the history it is.
+     * @param userId whose logs to return
+     * @param after cursor from the previous page, or null for the newest logs
+     */
+    public AuditLogPage getAuditLogs(UUID userId, AuditLogCursor after, int limit) {
+        List<Object> args = new ArrayList<>(5);
+        StringBuilder sql = new StringBuilder(SELECT_COLUMNS).append(" WHERE TRUE");
+        if (userId != null) {
+            sql.append(" AND user_id = ?");
+            args.add(userId);
+        }
+        if (after != null) {
+            sql.append(" AND (created_at, id) < (?, ?)");
+            args.add(Timestamp.valueOf(after.getCreatedAt()));
+            args.add(after.getId());
+        }
+        sql.append(" ORDER BY created_at DESC, id DESC LIMIT ?");
+        // One extra row tells whether there is a next page
+        args.add(limit + 1);
+
+        List<AuditLog> logs = jdbcTemplate.query(sql.toString(), auditLogRowMapper(), args.toArray());
+        if (logs.size() <= limit) {
+            return new AuditLogPage(logs, null);
+        }
+        logs = logs.subList(0, limit);
+        return new AuditLogPage(logs, AuditLogCursor.after(logs.get(limit - 1)).encode());
     }
 
-    public List<AuditLog> getAllAuditLogs(int limit, int offset) {
-        String sql = """
-            SELECT id, user_id, endpoint, method, ip_address, user_agent, request_body, 
-                   response_status, response_time_ms, created_at
-            FROM audit.audit_logs 
-            ORDER BY created_at DESC
-            LIMIT ? OFFSET ?
-            """;
-        
-        return jdbcTemplate.query(sql, new Object[]{limit, offset}, auditLogRowMapper());
+    /**
+     * Streams the logs in [from, to), oldest first, to the consumer row by row.
+     * Rows are fetched from a server-side cursor fetchSize at a time, so the range
+     * never has to fit in memory; the connection is held until the last row has
+     * been consumed, or until timeoutMs has passed.
+     * @param userId whose logs to export
+     * @param from inclusive lower bound, or null for no bound
+     * @param to exclusive upper bound, or null for no bound
+     * @return rows streamed
+     * @throws QueryTimeoutException if the export ran longer than timeoutMs; the
+     *         rows consumed until then are complete
+     */
+    public long exportAuditLogs(UUID userId, LocalDateTime from, LocalDateTime to, long timeoutMs,
+                                Consumer<AuditLog> consumer) {
+        List<Object> args = new ArrayList<>(3);
+        StringBuilder sql = new StringBuilder(SELECT_COLUMNS).append(" WHERE TRUE");
+        if (userId != null) {
+            sql.append(" AND user_id = ?");
+            args.add(userId);
+        }
+        if (from != null) {
+            sql.append(" AND created_at >= ?");
+            args.add(Timestamp.valueOf(from));
+        }
+        if (to != null) {
+            sql.append(" AND created_at < ?");
+            args.add(Timestamp.valueOf(to));
+        }
+        sql.append(" ORDER BY created_at, id");
+
+        RowMapper<AuditLog> rowMapper = auditLogRowMapper();
+        long[] rows = new long[1];
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(exportFetchSize);
+        // PostgreSQL only streams with a cursor inside a transaction
+        readOnlyTransaction.executeWithoutResult(status -> streaming.query(sql.toString(),
+            (RowCallbackHandler) rs -> {
+                if (System.nanoTime() - deadline > 0) {
+                    // Gives the pooled connection back instead of holding it for a slow client
+                    throw new QueryTimeoutException("Audit log export stopped after " + timeoutMs + " ms and " + rows[0] + " rows");
+                }
+                consumer.accept(rowMapper.mapRow(rs, (int) rows[0]++));
+            }, args.toArray()));
+        return rows[0];
     }
 
+    /**
+     * Exact count; scans the user's part of the index, so prefer
+     * {@link #getApproximateAuditLogCount(UUID)}.
+     */
     public long getAuditLogCount(UUID userId) {
         String sql = "SELECT COUNT(*) FROM audit.audit_logs WHERE user_id = ?";
         Long count = jdbcTemplate.queryForObject(sql, Long.class, userId);
         return count != null ? count : 0;
     }
 
-    public long getTotalAuditLogCount() {
-        String sql = "SELECT COUNT(*) FROM audit.audit_logs";
-        Long count = jdbcTemplate.queryForObject(sql, Long.class);
-        return count != null ? count : 0;
+    /**
+     * The planner's estimate of the user's row count, from the table statistics as
+     * of the last VACUUM or ANALYZE; nothing is scanned. The planner never estimates
+     * fewer than one row. Falls back to the exact count if there is no plan to read.
+     */
+    public long getApproximateAuditLogCount(UUID userId) {
+        List<String> plan = jdbcTemplate.queryForList(
+            "EXPLAIN SELECT 1 FROM audit.audit_logs WHERE user_id = ?", String.class, userId);
+        Matcher rows = PLAN_ROWS.matcher(plan.isEmpty() ? "" : plan.get(0));
+        return rows.find() ? Long.parseLong(rows.group(1)) : getAuditLogCount(userId);
     }
 
     private RowMapper<AuditLog> auditLogRowMapper() {
@@ -0,0 +1,532 @@
+package com.microservices.gateway.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Local append-only journal of fraud decisions, so a decision survives the
+ * database being slow or down. Decisions are appended to memory-mapped segment
+ * files as frames of [payload length][CRC32C][payload]; a frame's length is
+ * written last, so a torn append reads as the end of the journal. Positions are
+ * global offsets: a segment file is named after the offset of its first byte, and
+ * the next segment starts where the previous one's mapping ends.
+ * {@link DecisionJournalReplayer} loads the journal into fraud_analysis_log and
+ * commits the offset it has reached to a checkpoint file; segments wholly before
+ * the checkpoint are deleted. If the directory cannot be opened the journal stays
+ * closed and decisions go through the in-memory queue only.
+ *
+ * <p>Segments are written out in full before they are mapped: a write to a page of
+ * a sparse file that the disk has no room for raises SIGBUS, which reaches Java as
+ * an InternalError instead of an IOException. The directory is locked for as long
+ * as the journal is open, so two gateway processes cannot append to the same one.
+ *
+ * <p>Writing a segment out takes a while, so the next one is prepared on a
+ * background thread while the current one fills up, and rolling over only swaps
+ * in the ready mapping. If it is not ready yet the append fails and the decision
+ * goes to the in-memory queue; an append never waits on the disk. A segment
+ * prepared but not yet used is just an empty segment when the journal reopens.
+ */
+@Component
+public class DecisionJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(DecisionJournal.class);
+
+    private static final int FRAME_HEADER = 8;
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String CHECKPOINT = "checkpoint";
+    private static final String LOCK = "lock";
+    private static final int PREALLOCATE_CHUNK = 1024 * 1024;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentSize;
+
+    // Guarded by this; the replayer reads segments it looked up under the lock
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private Segment current;
+    private CompletableFuture<Segment> next;
+    private FileChannel lockChannel;
+
+    // Prepares the next segment and forces retired ones, off the journal lock
+    private final ExecutorService segmentExecutor = Executors.newSingleThreadExecutor(
+        Thread.ofPlatform().name("decision-journal-segments").daemon(true).factory());
+
+    private volatile boolean open;
+    private volatile long writeOffset;
+    private volatile long committedOffset;
+
+    public DecisionJournal(@Value("${fraud-log.journal.enabled:true}") boolean enabled,
+                           @Value("${fraud-log.journal.directory:./data/decision-journal}") String directory,
+                           @Value("${fraud-log.journal.segment-size-mb:64}") int segmentSizeMb) {
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.segmentSize = segmentSizeMb * 1024 * 1024;
+    }
+
+    /**
+     * Maps the existing segments and finds the end of the journal: the first frame
+     * in the last segment that is empty or fails its CRC.
+     */
+    @PostConstruct
+    public synchronized void open() {
+        if (!enabled) {
+            logger.info("Decision journal disabled");
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            lockDirectory();
+            long checkpoint = readCheckpoint();
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    String name = file.getFileName().toString();
+                    if (name.endsWith(SEGMENT_SUFFIX)) {
+                        long base = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                        segments.put(base, Segment.map(file, base, segmentSize));
+                    }
+                }
+            }
+            if (segments.isEmpty()) {
+                current = createSegment(checkpoint);
+            } else {
+                current = segments.lastEntry().getValue();
+                current.recover();
+            }
+            writeOffset = current.base + current.position;
+            committedOffset = Math.min(Math.max(checkpoint, segments.firstKey()), writeOffset);
+            prepareNextSegment();
+            open = true;
+            logger.info("Decision journal opened at {}: {} segments, {} bytes not yet loaded",
+                directory, segments.size(), writeOffset - committedOffset);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to open decision journal at {}, decisions will only be queued in memory: {}",
+                directory, e.getMessage());
+            segments.clear();
+            current = null;
+            next = null;
+            releaseLock();
+        }
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Appends a decision. Only the page cache is written, so this takes microseconds;
+     * pages reach the disk on the periodic {@link #force()} or when the OS writes them back.
+     * Fails if the current segment is full and the next one is not prepared yet.
+     */
+    public synchronized void append(FraudAnalysisRecord record) throws IOException {
+        if (!open) {
+            throw new IOException("Decision journal is not open");
+        }
+        byte[] payload = encode(record);
+        int frame = FRAME_HEADER + payload.length;
+        if (frame > segmentSize) {
+            throw new IOException("Decision of " + payload.length + " bytes does not fit in a journal segment");
+        }
+        if (current.position + frame > current.capacity()) {
+            rollOver();
+        }
+        int pos = current.position;
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        try {
+            current.buffer.put(pos + FRAME_HEADER, payload);
+            current.buffer.putInt(pos + 4, (int) crc.getValue());
+            current.buffer.putInt(pos, payload.length);
+        } catch (InternalError e) {
+            // SIGBUS: the page is not backed after all, e.g. the file was truncated.
+            // The length is written last, so nothing of this frame will be read back.
+            throw new IOException("Decision journal segment " + current.path.getFileName() + " is not writable", e);
+        }
+        current.position = pos + frame;
+        writeOffset = current.base + current.position;
+        notifyAll();
+    }
+
+    /**
+     * Reads up to max decisions starting at the given offset, which must be the
+     * start of a frame (the committed offset or the next offset of an earlier entry).
+     */
+    public List<Entry> read(long from, int max) {
+        List<Entry> entries = new ArrayList<>();
+        long offset = from;
+        while (entries.size() < max && offset < writeOffset) {
+            Segment segment;
+            synchronized (this) {
+                Map.Entry<Long, Segment> floor = segments.floorEntry(offset);
+                segment = floor != null ? floor.getValue() : segments.firstEntry().getValue();
+            }
+            if (offset < segment.base) {
+                offset = segment.base;
+            }
+            int pos = (int) (offset - segment.base);
+            int length = pos + FRAME_HEADER <= segment.capacity() ? segment.buffer.getInt(pos) : 0;
+            if (length <= 0) {
+                // Rest of the segment unused, the journal continues in the next one
+                offset = segment.base + segment.capacity();
+                continue;
+            }
+            byte[] payload = new byte[length];
+            segment.buffer.get(pos + FRAME_HEADER, payload);
+            CRC32C crc = new CRC32C();
+            crc.update(payload);
+            if ((int) crc.getValue() != segment.buffer.getInt(pos + 4)) {
+                logger.error("Decision journal frame at offset {} is corrupt, skipping the rest of its segment", offset);
+                offset = segment.base + segment.capacity();
+                continue;
+            }
+            offset += FRAME_HEADER + length;
+            entries.add(new Entry(decode(payload), offset));
+        }
+        return entries;
+    }
+
+    /**
+     * Waits until something is appended after the given offset, or the timeout passes.
+     */
+    public synchronized void awaitAppend(long after, long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        long remaining = timeoutNanos;
+        while (writeOffset <= after && remaining > 0) {
+            wait(Math.max(1, remaining / 1_000_000));
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    /**
+     * Records that everything before the offset is in fraud_analysis_log, and deletes
+     * the segments that lie wholly before it.
+     */
+    public void commit(long offset) throws IOException {
+        Path temp = directory.resolve(CHECKPOINT + ".tmp");
+        Files.write(temp, ByteBuffer.allocate(Long.BYTES).putLong(0, offset).array());
+        Files.move(temp, directory.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        committedOffset = offset;
+
+        List<Segment> loaded = new ArrayList<>();
+        synchronized (this) {
+            while (segments.size() > 1) {
+                Segment first = segments.firstEntry().getValue();
+                if (first == current || first.base + first.capacity() > offset) {
+                    break;
+                }
+                segments.pollFirstEntry();
+                loaded.add(first);
+            }
+        }
+        for (Segment segment : loaded) {
+            Files.deleteIfExists(segment.path);
+        }
+    }
+
+    public long getWriteOffset() {
+        return writeOffset;
+    }
+
+    public long getCommittedOffset() {
+        return committedOffset;
+    }
+
+    /**
+     * @return journal bytes not yet loaded into fraud_analysis_log
+     */
+    public long getBacklogBytes() {
+        return writeOffset - committedOffset;
+    }
+
+    /**
+     * Flushes the current segment to disk, bounding what an OS crash can lose.
+     */
+    @Scheduled(fixedDelayString = "${fraud-log.journal.force-interval-ms:1000}")
+    public void force() {
+        Segment segment;
+        synchronized (this) {
+            if (!open) {
+                return;
+            }
+            segment = current;
+        }
+        // Outside the lock, appends carry on while the pages are written out
+        segment.buffer.force();
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        segmentExecutor.shutdown();
+        if (open) {
+            open = false;
+            current.buffer.force();
+        }
+        releaseLock();
+    }
+
+    private void lockDirectory() throws IOException {
+        lockChannel = FileChannel.open(directory.resolve(LOCK), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            if (lockChannel.tryLock() == null) {
+                throw new IOException("journal directory is locked by another process");
+            }
+        } catch (OverlappingFileLockException e) {
+            throw new IOException("journal directory is already open in this process");
+        }
+    }
+
+    private void releaseLock() {
+        try {
+            if (lockChannel != null) {
+                // Closing the channel releases the lock
+                lockChannel.close();
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to release decision journal lock: {}", e.getMessage());
+        }
+        lockChannel = null;
+    }
+
+    /**
+     * Swaps in the prepared next segment and starts preparing the one after it.
+     * The retired segment is forced on the segment thread.
+     */
+    private void rollOver() throws IOException {
+        long base = current.base + current.capacity();
+        if (!next.isDone()) {
+            throw new IOException("Next decision journal segment is not ready yet");
+        }
+        Segment segment;
+        try {
+            segment = next.join();
+        } catch (RuntimeException e) {
+            // Try again for the next append
+            prepareNextSegment();
+            Throwable cause = e.getCause() instanceof UncheckedIOException io ? io.getCause() : e.getCause();
+            throw new IOException("Failed to prepare the next decision journal segment", cause);
+        }
+        Segment retired = current;
+        segments.put(base, segment);
+        current = segment;
+        prepareNextSegment();
+        segmentExecutor.execute(retired.buffer::force);
+    }
+
+    private void prepareNextSegment() {
+        long base = current.base + current.capacity();
+        next = CompletableFuture.supplyAsync(() -> {
+            try {
+                return newSegment(base);
+            } catch (IOException e) {
+                logger.warn("Failed to prepare decision journal segment at offset {}: {}", base, e.getMessage());
+                throw new UncheckedIOException(e);
+            }
+        }, segmentExecutor);
+    }
+
+    private Segment createSegment(long base) throws IOException {
+        Segment segment = newSegment(base);
+        segments.put(base, segment);
+        return segment;
+    }
+
+    private Segment newSegment(long base) throws IOException {
+        Path path = directory.resolve(String.format("%020d%s", base, SEGMENT_SUFFIX));
+        preallocate(path, segmentSize);
+        return Segment.map(path, base, segmentSize);
+    }
+
+    /**
+     * Writes the segment out as zeros under a temporary name and moves it into place,
+     * so running out of disk fails here with an IOException and never leaves a short
+     * segment behind.
+     */
+    private static void preallocate(Path path, int size) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer zeros = ByteBuffer.allocate(Math.min(size, PREALLOCATE_CHUNK));
+            long written = 0;
+            while (written < size) {
+                zeros.clear().limit((int) Math.min(zeros.capacity(), size - written));
+                written += channel.write(zeros, written);
+            }
+            channel.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private long readCheckpoint() throws IOException {
+        Path file = directory.resolve(CHECKPOINT);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        return ByteBuffer.wrap(Files.readAllBytes(file)).getLong();
+    }
+
+    static byte[] encode(FraudAnalysisRecord record) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeString(out, record.getTransactionId());
+            writeString(out, record.getInvoiceId());
+            writeString(out, record.getSupplierIban());
+            writeString(out, record.getAmount() != null ? record.getAmount().toPlainString() : null);
+            writeString(out, record.getSupplierName());
+            writeString(out, record.getRiskStatus());
+            writeString(out, record.getRiskLevel());
+            writeString(out, record.getAnomalies());
+            out.writeLong(record.getCreatedAt().toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(record.getCreatedAt().getNano());
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static FraudAnalysisRecord decode(byte[] payload) {
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        String transactionId = readString(in);
+        String invoiceId = readString(in);
+        String supplierIban = readString(in);
+        String amount = readString(in);
+        String supplierName = readString(in);
+        String riskStatus = readString(in);
+        String riskLevel = readString(in);
+        String anomalies = readString(in);
+        LocalDateTime createdAt = LocalDateTime.ofEpochSecond(in.getLong(), in.getInt(), ZoneOffset.UTC);
+        return new FraudAnalysisRecord(transactionId, invoiceId, supplierIban,
+            amount != null ? new BigDecimal(amount) : null, supplierName, riskStatus, riskLevel, anomalies, createdAt);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A decision read from the journal and the offset of the frame after it.
+     */
+    public static final class Entry {
+        private final FraudAnalysisRecord record;
+        private final long nextOffset;
+
+        Entry(FraudAnalysisRecord record, long nextOffset) {
+            this.record = record;
+            this.nextOffset = nextOffset;
+        }
+
+        public FraudAnalysisRecord getRecord() {
+            return record;
+        }
+
+        public long getNextOffset() {
+            return nextOffset;
+        }
+    }
+
+    /**
+     * One mapped segment file. The mapping stays valid after the channel is closed.
+     */
+    static final class Segment {
+        final long base;
+        final Path path;
+        final MappedByteBuffer buffer;
+        // Next free byte; only used for the current segment, under the journal lock
+        int position;
+
+        private Segment(long base, Path path, MappedByteBuffer buffer) {
+            this.base = base;
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        static Segment map(Path path, long base, int size) throws IOException {
+            try (FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long length = channel.size() > 0 ? channel.size() : size;
+                return new Segment(base, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, length));
+            }
+        }
+
+        int capacity() {
+            return buffer.capacity();
+        }
+
+        /**
+         * Positions after the last intact frame and zeroes anything past it, so a
+         * torn append cannot be mistaken for a frame later.
+         */
+        void recover() {
+            int pos = 0;
+            while (pos + FRAME_HEADER <= capacity()) {
+                int length = buffer.getInt(pos);
+                if (length <= 0 || pos + FRAME_HEADER + length > capacity()) {
+                    break;
+                }
+                CRC32C crc = new CRC32C();
+                crc.update(buffer.slice(pos + FRAME_HEADER, length));
+                if ((int) crc.getValue() != buffer.getInt(pos + 4)) {
+                    break;
+                }
+                pos += FRAME_HEADER + length;
+            }
+            position = pos;
+            if (pos + Integer.BYTES <= capacity() && buffer.getInt(pos) != 0) {
+                logger.warn("Decision journal segment {} has a torn frame at {}, discarding it", path.getFileName(), pos);
+                for (int i = pos; i < capacity(); i++) {
+                    buffer.put(i, (byte) 0);
+                }
+            }
+        }
+    }
+}
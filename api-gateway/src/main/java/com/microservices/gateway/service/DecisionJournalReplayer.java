@@ -0,0 +1,184 @@
+package com.microservices.gateway.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the decision journal into fraud_analysis_log in batches, from the
+ * committed offset onwards, committing the offset after each batch. A batch the
+ * database cannot take is retried after a backoff without moving the offset, so
+ * decisions wait in the journal through a database outage, including across a
+ * restart. The insert skips rows already in the table (same transaction id and
+ * created_at, which the journal preserves), so loading a batch twice is harmless.
+ * Rows the table rejects are logged and skipped.
+ */
+@Component
+public class DecisionJournalReplayer {
+
+    private static final Logger logger = LoggerFactory.getLogger(DecisionJournalReplayer.class);
+
+    private final DecisionJournal journal;
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final long retryBackoffMs;
+    private final long shutdownTimeoutMs;
+    private final Thread replayThread;
+    private final Counter replayed;
+    private final Counter failed;
+
+    private volatile boolean running = true;
+
+    public DecisionJournalReplayer(DecisionJournal journal,
+                                   JdbcTemplate jdbcTemplate,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${fraud-log.writer.batch-size:500}") int batchSize,
+                                   @Value("${fraud-log.writer.flush-interval-ms:200}") long flushIntervalMs,
+                                   @Value("${fraud-log.journal.retry-backoff-ms:1000}") long retryBackoffMs,
+                                   @Value("${fraud-log.writer.shutdown-timeout-ms:10000}") long shutdownTimeoutMs) {
+        this.journal = journal;
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.retryBackoffMs = retryBackoffMs;
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        this.replayThread = Thread.ofPlatform().name("decision-journal-replayer").daemon(true).unstarted(this::run);
+
+        Gauge.builder("fraud.log.journal.backlog", journal, DecisionJournal::getBacklogBytes)
+            .description("Journal bytes not yet loaded into fraud_analysis_log")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        this.replayed = Counter.builder("fraud.log.journal.replayed")
+            .description("Decisions loaded from the journal into fraud_analysis_log")
+            .register(meterRegistry);
+        this.failed = Counter.builder("fraud.log.dropped")
+            .tag("reason", "failed")
+            .description("Decisions not written to fraud_analysis_log")
+            .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (journal.isOpen()) {
+            replayThread.start();
+        }
+    }
+
+    private void run() {
+        long position = journal.getCommittedOffset();
+        while (running || position < journal.getWriteOffset()) {
+            List<DecisionJournal.Entry> entries;
+            try {
+                entries = nextBatch(position);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (entries.isEmpty()) {
+                continue;
+            }
+            if (!load(entries)) {
+                if (!running) {
+                    // The rest stays in the journal for the next start
+                    break;
+                }
+                try {
+                    Thread.sleep(retryBackoffMs);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                continue;
+            }
+            position = entries.get(entries.size() - 1).getNextOffset();
+            try {
+                journal.commit(position);
+            } catch (IOException e) {
+                // Harmless: after a restart the batch is loaded again and skipped
+                logger.warn("Failed to commit decision journal offset {}: {}", position, e.getMessage());
+            }
+        }
+    }
+
+    // Collects decisions until the batch is full or the flush interval has passed
+    private List<DecisionJournal.Entry> nextBatch(long position) throws InterruptedException {
+        List<DecisionJournal.Entry> entries = new ArrayList<>(journal.read(position, batchSize));
+        long flushAt = System.nanoTime() + flushIntervalNanos;
+        while (running && entries.size() < batchSize) {
+            long remaining = flushAt - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            long end = entries.isEmpty() ? position : entries.get(entries.size() - 1).getNextOffset();
+            journal.awaitAppend(end, remaining);
+            entries.addAll(journal.read(end, batchSize - entries.size()));
+        }
+        return entries;
+    }
+
+    /**
+     * @return false if the database is unavailable and the batch has to be retried
+     */
+    private boolean load(List<DecisionJournal.Entry> entries) {
+        List<FraudAnalysisRecord> records = new ArrayList<>(entries.size());
+        for (DecisionJournal.Entry entry : entries) {
+            records.add(entry.getRecord());
+        }
+        try {
+            FraudAnalysisLogWriter.insert(jdbcTemplate, records);
+            replayed.increment(records.size());
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            // Find the rows the table rejects and skip them
+            for (FraudAnalysisRecord record : records) {
+                try {
+                    FraudAnalysisLogWriter.insert(jdbcTemplate, List.of(record));
+                    replayed.increment();
+                } catch (DataIntegrityViolationException rejected) {
+                    failed.increment();
+                    logger.warn("Fraud analysis log row {} rejected: {}", record.getTransactionId(),
+                        rejected.getMostSpecificCause().getMessage());
+                } catch (DataAccessException unavailable) {
+                    logger.warn("Failed to load decision journal, retrying in {} ms: {}", retryBackoffMs, unavailable.getMessage());
+                    return false;
+                }
+            }
+            return true;
+        } catch (DataAccessException e) {
+            logger.warn("Failed to load decision journal, retrying in {} ms: {}", retryBackoffMs, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Gives the replayer a chance to load what is left; anything it cannot stays journaled.
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        try {
+            replayThread.join(shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (replayThread.isAlive()) {
+            replayThread.interrupt();
+        }
+        if (journal.isOpen()) {
+            logger.info("Decision journal replayer stopped with {} bytes left to load", journal.getBacklogBytes());
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.microservices.gateway.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fingerprints of recently logged payments (supplier IBAN plus amount in minor
+ * units), replacing the 24 hour scan of fraud_analysis_log in the duplicate check.
+ * Fingerprints are kept in hourly buckets, each a primitive hash table with its own
+ * lock; a bucket that falls out of the window is dropped whole when its slot in the
+ * ring is reused, so entries never expire one by one. The window is counted in whole
+ * hours and includes the current one, so it reaches back up to one hour further than
+ * the query did. Seeded from the log at startup like {@link VelocityCounters}.
+ */
+@Component
+public class DuplicatePaymentStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(DuplicatePaymentStore.class);
+
+    private static final int INITIAL_BUCKET_CAPACITY = 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int windowHours;
+    // One bucket per hour of the window plus the current hour, indexed by hour modulo length
+    private final AtomicReferenceArray<Bucket> buckets;
+    private final LocalDateTime recordingSince;
+
+    private volatile boolean ready;
+
+    public DuplicatePaymentStore(JdbcTemplate jdbcTemplate,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${duplicates.enabled:true}") boolean enabled,
+                                 @Value("${duplicates.window-hours:24}") int windowHours) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.windowHours = windowHours;
+        this.buckets = new AtomicReferenceArray<>(windowHours + 1);
+        this.recordingSince = LocalDateTime.now();
+        Gauge.builder("duplicates.store.entries", this, DuplicatePaymentStore::size)
+            .description("Payment fingerprints held for the duplicate check")
+            .register(meterRegistry);
+        Gauge.builder("duplicates.store.memory", this, DuplicatePaymentStore::memoryBytes)
+            .description("Heap held by the duplicate payment fingerprint tables")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Seeds the store with the payments logged inside the window before startup.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void seed() {
+        if (!enabled) {
+            logger.info("Duplicate payment store disabled, duplicate checks will query the database");
+            return;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            long oldestHour = currentHour() - windowHours;
+            int[] rows = {0};
+            jdbcTemplate.query("""
+                SELECT supplier_iban, amount, date_trunc('hour', created_at) AS hour, COUNT(*) AS payments
+                FROM fraud_analysis_log
+                WHERE created_at >= ? AND created_at < ?
+                GROUP BY supplier_iban, amount, date_trunc('hour', created_at)
+                """,
+                rs -> {
+                    String iban = rs.getString(1);
+                    BigDecimal amount = rs.getBigDecimal(2);
+                    if (iban != null && amount != null) {
+                        add(Fingerprints.ofPayment(iban, amount), epochHour(rs.getTimestamp(3)), rs.getInt(4));
+                        rows[0]++;
+                    }
+                },
+                Timestamp.from(Instant.ofEpochSecond(TimeUnit.HOURS.toSeconds(oldestHour))),
+                Timestamp.valueOf(recordingSince));
+            ready = true;
+            logger.info("Duplicate payment store seeded with {} fingerprints in {} ms ({} bytes)",
+                rows[0], System.currentTimeMillis() - start, memoryBytes());
+        } catch (Exception e) {
+            logger.warn("Failed to seed duplicate payment store, duplicate checks will query the database: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return true once seeded; until then counts would miss earlier payments
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Records a logged payment.
+     */
+    public void record(String iban, BigDecimal amount) {
+        if (enabled && iban != null && amount != null) {
+            add(Fingerprints.ofPayment(iban, amount), currentHour(), 1);
+        }
+    }
+
+    /**
+     * @return payments recorded with the same IBAN and amount within the window
+     */
+    public int count(String iban, BigDecimal amount) {
+        if (iban == null || amount == null) {
+            return 0;
+        }
+        long fingerprint = Fingerprints.ofPayment(iban, amount);
+        long oldestHour = currentHour() - windowHours;
+        int total = 0;
+        for (Bucket bucket : snapshot()) {
+            if (bucket != null && bucket.hour >= oldestHour) {
+                total += bucket.get(fingerprint);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return fingerprints held across all buckets, including an expired one not yet reused
+     */
+    public int size() {
+        int size = 0;
+        for (Bucket bucket : snapshot()) {
+            if (bucket != null) {
+                size += bucket.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return approximate heap used by the fingerprint tables
+     */
+    public long memoryBytes() {
+        long bytes = 0;
+        for (Bucket bucket : snapshot()) {
+            if (bucket != null) {
+                bytes += bucket.memoryBytes();
+            }
+        }
+        return bytes;
+    }
+
+    private void add(long fingerprint, long hour, int payments) {
+        if (hour < currentHour() - windowHours) {
+            return;
+        }
+        Bucket bucket = bucketFor(hour);
+        if (bucket != null) {
+            bucket.add(fingerprint, payments);
+        }
+    }
+
+    // Replaces an expired bucket in the hour's slot; null if the slot already holds a newer hour.
+    // Only the first write of an hour swaps the slot, every other call is a plain read.
+    private Bucket bucketFor(long hour) {
+        int index = Math.floorMod(hour, buckets.length());
+        while (true) {
+            Bucket bucket = buckets.get(index);
+            if (bucket != null && bucket.hour >= hour) {
+                return bucket.hour == hour ? bucket : null;
+            }
+            Bucket replacement = new Bucket(hour, INITIAL_BUCKET_CAPACITY);
+            if (buckets.compareAndSet(index, bucket, replacement)) {
+                return replacement;
+            }
+        }
+    }
+
+    private Bucket[] snapshot() {
+        Bucket[] snapshot = new Bucket[buckets.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = buckets.get(i);
+        }
+        return snapshot;
+    }
+
+    private static long currentHour() {
+        return TimeUnit.MILLISECONDS.toHours(System.currentTimeMillis());
+    }
+
+    // created_at is written from LocalDateTime.now(), so read it back in the same zone
+    private static long epochHour(Timestamp timestamp) {
+        return TimeUnit.SECONDS.toHours(timestamp.toLocalDateTime().atZone(ZoneId.systemDefault()).toEpochSecond());
+    }
+
+    /**
+     * Fingerprint counts for one hour: a linear-probing table of fingerprints with
+     * a parallel array of counts.
+     */
+    static final class Bucket {
+        final long hour;
+        private long[] keys;
+        private int[] counts;
+        private int size;
+
+        Bucket(long hour, int capacity) {
+            this.hour = hour;
+            this.keys = new long[capacity];
+            this.counts = new int[capacity];
+        }
+
+        synchronized void add(long fingerprint, int payments) {
+            if ((size + 1) * 4 > keys.length * 3) {
+                grow();
+            }
+            int slot = slotFor(keys, fingerprint);
+            if (keys[slot] == 0) {
+                keys[slot] = fingerprint;
+                size++;
+            }
+            counts[slot] += payments;
+        }
+
+        synchronized int get(long fingerprint) {
+            int slot = slotFor(keys, fingerprint);
+            return keys[slot] == fingerprint ? counts[slot] : 0;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized long memoryBytes() {
+            return (long) keys.length * Long.BYTES + (long) counts.length * Integer.BYTES;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new long[oldKeys.length * 2];
+            counts = new int[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int slot = slotFor(keys, oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+
+        private static int slotFor(long[] keys, long fingerprint) {
+            int mask = keys.length - 1;
+            int slot = (int) fingerprint & mask;
+            while (keys[slot] != 0 && keys[slot] != fingerprint) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.microservices.gateway.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * 64-bit hashes used as primitive keys by the in-memory payment counters.
+ */
+final class Fingerprints {
+
+    private Fingerprints() {
+    }
+
+    /**
+     * 64-bit FNV-1a over the IBAN characters, finished with the MurmurHash3 mixer.
+     * Never returns 0, which the counters use to mark empty slots.
+     */
+    static long ofIban(String iban) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < iban.length(); i++) {
+            h ^= iban.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h = mix(h);
+        return h != 0 ? h : 1;
+    }
+
+    /**
+     * Hash of the IBAN and the amount in minor units, so 120.9 and 120.90 match
+     * as they do in SQL. Never returns 0.
+     */
+    static long ofPayment(String iban, BigDecimal amount) {
+        long minorUnits = amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+        long h = mix(ofIban(iban) ^ mix(minorUnits + 0x9e3779b97f4a7c15L));
+        return h != 0 ? h : 1;
+    }
+
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
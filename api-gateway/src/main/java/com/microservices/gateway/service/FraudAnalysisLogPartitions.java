@@ -0,0 +1,48 @@
+package com.microservices.gateway.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the daily partitions of fraud_analysis_log ahead of the clock and retires
+ * old ones by dropping them whole (see V11 and V14). Runs at startup and then hourly, so a
+ * missed run or a restart near midnight never leaves a day without its partition.
+ */
+@Component
+public class FraudAnalysisLogPartitions {
+
+    private static final Logger logger = LoggerFactory.getLogger(FraudAnalysisLogPartitions.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int daysAhead;
+    private final int retentionDays;
+
+    public FraudAnalysisLogPartitions(JdbcTemplate jdbcTemplate,
+                                      @Value("${fraud-log.partitions.days-ahead:7}") int daysAhead,
+                                      @Value("${fraud-log.partitions.retention-days:90}") int retentionDays) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.daysAhead = daysAhead;
+        this.retentionDays = retentionDays;
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${fraud-log.partitions.interval-ms:3600000}")
+    public void maintain() {
+        try {
+            Integer created = jdbcTemplate.queryForObject(
+                "SELECT create_fraud_analysis_log_partitions(?)", Integer.class, daysAhead);
+            Integer dropped = retentionDays > 0
+                ? jdbcTemplate.queryForObject(
+                    "SELECT drop_fraud_analysis_log_partitions(make_interval(days => ?))", Integer.class, retentionDays)
+                : 0;
+            if ((created != null && created > 0) || (dropped != null && dropped > 0)) {
+                logger.info("fraud_analysis_log partitions: {} created, {} dropped", created, dropped);
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to maintain fraud_analysis_log partitions: {}", e.getMessage());
+        }
+    }
+}
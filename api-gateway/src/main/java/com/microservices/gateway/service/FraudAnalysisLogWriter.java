@@ -0,0 +1,264 @@
+package com.microservices.gateway.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes fraud_analysis_log rows off the request path. While the
+ * {@link DecisionJournal} is open, decisions are appended to it and loaded by the
+ * {@link DecisionJournalReplayer}. Otherwise, or if an append fails, they are handed
+ * to a bounded queue and a background thread inserts them in JDBC batches, flushing
+ * when a batch fills or the flush interval passes (with reWriteBatchedInserts a
+ * batch goes out as multi-row INSERTs). What happens when the queue is full is set
+ * by the overflow policy. On shutdown the queue is drained before the context closes.
+ */
+@Component
+public class FraudAnalysisLogWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(FraudAnalysisLogWriter.class);
+
+    static final String INSERT_SQL = """
+        INSERT INTO fraud_analysis_log
+        (transaction_id, invoice_id, supplier_iban, amount, supplier_name,
+         risk_status, risk_level, anomalies, created_at)
+        VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+        ON CONFLICT (transaction_id, created_at) DO NOTHING
+        """;
+
+    /**
+     * What to do with a decision when the queue is full.
+     */
+    public enum OverflowPolicy {
+        /** Wait up to offer-timeout-ms for space, then drop */
+        BLOCK,
+        /** Drop the decision straight away */
+        DROP,
+        /** Insert it on the request thread; opt-in, as it puts a database write back on the request path */
+        CALLER_RUNS
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DecisionJournal journal;
+    private final BlockingQueue<FraudAnalysisRecord> queue;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final OverflowPolicy overflowPolicy;
+    private final long offerTimeoutMs;
+    private final long shutdownTimeoutMs;
+    private final Thread writerThread;
+
+    private final DistributionSummary flushSize;
+    private final Timer flushTimer;
+    private final Counter dropped;
+    private final Counter failed;
+
+    private volatile boolean running = true;
+
+    public FraudAnalysisLogWriter(JdbcTemplate jdbcTemplate,
+                                  DecisionJournal journal,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${fraud-log.writer.queue-capacity:10000}") int queueCapacity,
+                                  @Value("${fraud-log.writer.batch-size:500}") int batchSize,
+                                  @Value("${fraud-log.writer.flush-interval-ms:200}") long flushIntervalMs,
+                                  @Value("${fraud-log.writer.overflow-policy:BLOCK}") OverflowPolicy overflowPolicy,
+                                  @Value("${fraud-log.writer.offer-timeout-ms:10}") long offerTimeoutMs,
+                                  @Value("${fraud-log.writer.shutdown-timeout-ms:10000}") long shutdownTimeoutMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.journal = journal;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.overflowPolicy = overflowPolicy;
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        this.writerThread = Thread.ofPlatform().name("fraud-log-writer").daemon(true).unstarted(this::run);
+
+        Gauge.builder("fraud.log.queue.depth", queue, BlockingQueue::size)
+            .description("Decisions waiting to be written to fraud_analysis_log")
+            .register(meterRegistry);
+        this.flushSize = DistributionSummary.builder("fraud.log.flush.size")
+            .description("Rows per fraud_analysis_log batch insert")
+            .register(meterRegistry);
+        this.flushTimer = Timer.builder("fraud.log.flush")
+            .description("Time to write one batch to fraud_analysis_log")
+            .register(meterRegistry);
+        this.dropped = Counter.builder("fraud.log.dropped")
+            .tag("reason", "overflow")
+            .description("Decisions not written to fraud_analysis_log")
+            .register(meterRegistry);
+        this.failed = Counter.builder("fraud.log.dropped")
+            .tag("reason", "failed")
+            .description("Decisions not written to fraud_analysis_log")
+            .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        writerThread.start();
+    }
+
+    /**
+     * Hands a decision to the writer. Only waits if the queue is full and the
+     * overflow policy says so.
+     * @return false if the decision was dropped
+     */
+    public boolean submit(FraudAnalysisRecord record) {
+        if (journal.isOpen()) {
+            try {
+                journal.append(record);
+                return true;
+            } catch (IOException e) {
+                logger.warn("Failed to journal transaction {}, queueing it instead: {}", record.getTransactionId(), e.getMessage());
+            }
+        }
+        if (!running) {
+            // Shutting down, nobody will drain the queue any more
+            return write(List.of(record)) == 1;
+        }
+        if (queue.offer(record)) {
+            return true;
+        }
+        switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    if (queue.offer(record, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                break;
+            case CALLER_RUNS:
+                return write(List.of(record)) == 1;
+            default:
+                break;
+        }
+        dropped.increment();
+        logger.warn("Fraud analysis log queue full, dropped transaction {}", record.getTransactionId());
+        return false;
+    }
+
+    /**
+     * @return decisions waiting to be written
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private void run() {
+        List<FraudAnalysisRecord> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                FraudAnalysisRecord first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // Fill the batch until it is full or the flush interval has passed
+                long flushAt = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = flushAt - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+                    FraudAnalysisRecord next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                queue.drainTo(batch, batchSize - batch.size());
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Inserts the rows in one batch. If the batch is rejected for its data, the rows
+     * are retried one by one so a single bad row does not take the others with it.
+     * @return rows written
+     */
+    private int write(List<FraudAnalysisRecord> batch) {
+        long start = System.nanoTime();
+        try {
+            insert(jdbcTemplate, batch);
+            flushSize.record(batch.size());
+            return batch.size();
+        } catch (DataIntegrityViolationException e) {
+            if (batch.size() == 1) {
+                failed.increment();
+                logger.warn("Fraud analysis log row {} rejected: {}", batch.get(0).getTransactionId(), e.getMostSpecificCause().getMessage());
+                return 0;
+            }
+            int written = 0;
+            for (FraudAnalysisRecord record : batch) {
+                written += write(List.of(record));
+            }
+            return written;
+        } catch (DataAccessException e) {
+            failed.increment(batch.size());
+            logger.error("Failed to write {} fraud analysis log rows: {}", batch.size(), e.getMessage());
+            return 0;
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    static void insert(JdbcTemplate jdbcTemplate, List<FraudAnalysisRecord> batch) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, record) -> {
+            ps.setString(1, record.getTransactionId());
+            ps.setString(2, record.getInvoiceId());
+            ps.setString(3, record.getSupplierIban());
+            ps.setBigDecimal(4, record.getAmount());
+            ps.setString(5, record.getSupplierName());
+            ps.setString(6, record.getRiskStatus());
+            ps.setString(7, record.getRiskLevel());
+            ps.setString(8, record.getAnomalies());
+            ps.setTimestamp(9, Timestamp.valueOf(record.getCreatedAt()));
+        });
+    }
+
+    /**
+     * Stops accepting work into the queue and waits for the writer to drain it.
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        try {
+            writerThread.join(shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            writerThread.interrupt();
+            logger.warn("Fraud analysis log writer did not drain within {} ms, {} rows left", shutdownTimeoutMs, queue.size());
+        } else {
+            logger.info("Fraud analysis log writer drained");
+        }
+    }
+}
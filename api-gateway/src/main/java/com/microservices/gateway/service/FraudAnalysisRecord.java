@@ -0,0 +1,80 @@
+package com.microservices.gateway.service;
+
+import com.microservices.gateway.model.FraudDetectionRequest;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * One row of fraud_analysis_log, captured when the decision is made.
+ */
+public final class FraudAnalysisRecord {
+
+    private final String transactionId;
+    private final String invoiceId;
+    private final String supplierIban;
+    private final BigDecimal amount;
+    private final String supplierName;
+    private final String riskStatus;
+    private final String riskLevel;
+    private final String anomalies;
+    private final LocalDateTime createdAt;
+
+    public FraudAnalysisRecord(String transactionId, String invoiceId, String supplierIban, BigDecimal amount,
+                               String supplierName, String riskStatus, String riskLevel, String anomalies,
+                               LocalDateTime createdAt) {
+        this.transactionId = transactionId;
+        this.invoiceId = invoiceId;
+        this.supplierIban = supplierIban;
+        this.amount = amount;
+        this.supplierName = supplierName;
+        this.riskStatus = riskStatus;
+        this.riskLevel = riskLevel;
+        this.anomalies = anomalies;
+        this.createdAt = createdAt;
+    }
+
+    static FraudAnalysisRecord of(FraudDetectionRequest request, String transactionId,
+                                  String riskStatus, String riskLevel, List<String> anomalies) {
+        return new FraudAnalysisRecord(transactionId, request.getInvoiceId(), request.getSupplierIban(),
+            request.getAmount(), request.getSupplierName(), riskStatus, riskLevel,
+            String.join("; ", anomalies), LocalDateTime.now());
+    }
+
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    public String getInvoiceId() {
+        return invoiceId;
+    }
+
+    public String getSupplierIban() {
+        return supplierIban;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public String getSupplierName() {
+        return supplierName;
+    }
+
+    public String getRiskStatus() {
+        return riskStatus;
+    }
+
+    public String getRiskLevel() {
+        return riskLevel;
+    }
+
+    public String getAnomalies() {
+        return anomalies;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -2,16 +2,21 @@ package com.microservices.gateway.service;
 
 import com.microservices.gateway.model.FraudDetectionRequest;
 import com.microservices.gateway.model.FraudDetectionResponse;
+import com.microservices.gateway.service.rules.FraudRule;
+import com.microservices.gateway.service.rules.FraudRulePipeline;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
 import java.math.BigDecimal;
-import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.UUID;
 
@@ -21,13 +26,46 @@ public class FraudDetectionService {
     private static final Logger logger = LoggerFactory.getLogger(FraudDetectionService.class);
     private final JdbcTemplate jdbcTemplate;
     private final RestTemplate restTemplate;
+    private final IbanRiskIndex ibanRiskIndex;
+    private final FraudRulePipeline fraudRulePipeline;
+    private final PaymentFactLoader paymentFactLoader;
+    private final VelocityCounters velocityCounters;
+    private final DuplicatePaymentStore duplicatePaymentStore;
+    private final SharedPaymentCounters sharedPaymentCounters;
+    private final FraudAnalysisLogWriter fraudAnalysisLogWriter;
+    private final JdbcTemplate factQueries;
     private final String accountsServiceUrl;
+    private final DistributionSummary requestedQueries;
+    private final DistributionSummary executedQueries;
 
     @Autowired
-    public FraudDetectionService(JdbcTemplate jdbcTemplate, RestTemplate restTemplate) {
+    public FraudDetectionService(JdbcTemplate jdbcTemplate, RestTemplate restTemplate, IbanRiskIndex ibanRiskIndex,
+                                 FraudRulePipeline fraudRulePipeline, PaymentFactLoader paymentFactLoader,
+                                 VelocityCounters velocityCounters, DuplicatePaymentStore duplicatePaymentStore,
+                                 SharedPaymentCounters sharedPaymentCounters, FraudAnalysisLogWriter fraudAnalysisLogWriter,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${fraud-analysis.io-timeout-ms:500}") long ioTimeoutMs) {
         this.jdbcTemplate = jdbcTemplate;
         this.restTemplate = restTemplate;
+        this.ibanRiskIndex = ibanRiskIndex;
+        this.fraudRulePipeline = fraudRulePipeline;
+        this.paymentFactLoader = paymentFactLoader;
+        this.velocityCounters = velocityCounters;
+        this.duplicatePaymentStore = duplicatePaymentStore;
+        this.sharedPaymentCounters = sharedPaymentCounters;
+        this.fraudAnalysisLogWriter = fraudAnalysisLogWriter;
+        // Fact queries abandoned at the analysis deadline should not keep running for long
+        this.factQueries = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.factQueries.setQueryTimeout((int) Math.max(1, (ioTimeoutMs + 999) / 1000));
         this.accountsServiceUrl = "http://accounts-service:8081";
+        this.requestedQueries = DistributionSummary.builder("fraud.analysis.queries")
+            .description("Database queries per payment analysis")
+            .tag("mode", "requested")
+            .register(meterRegistry);
+        this.executedQueries = DistributionSummary.builder("fraud.analysis.queries")
+            .description("Database queries per payment analysis")
+            .tag("mode", "executed")
+            .register(meterRegistry);
     }
 
     /**
@@ -41,11 +79,19 @@ public class FraudDetectionService {
         String riskLevel = "GOOD";
         String reason = "No anomalies detected";
         boolean requiresManualReview = false;
+        PaymentEvaluationContext context = new PaymentEvaluationContext(request, transactionId, this, paymentFactLoader);
 
         try {
+            // Every rule will run, so fetch the risk level and rule facts together
+            if (!fraudRulePipeline.isShortCircuit()) {
+                EnumSet<PaymentFact> facts = EnumSet.of(PaymentFact.IBAN_RISK_LEVEL);
+                facts.addAll(fraudRulePipeline.getRequiredFacts());
+                context.prefetch(facts);
+            }
+
             // 1. Check IBAN in database first
             logger.debug("Analyzing payment for IBAN: {}", maskIban(request.getSupplierIban()));
-            String dbRiskLevel = getIbanRiskLevel(request.getSupplierIban());
+            String dbRiskLevel = context.getIbanRiskLevel();
             logger.debug("Database returned risk level: {}", dbRiskLevel != null ? "***" : "null");
             
             if (dbRiskLevel != null) {
@@ -102,68 +148,12 @@ public class FraudDetectionService {
 
             // 3. Additional checks only if not already blocked and not explicitly marked as GOOD by database
             if (!"BLOCK".equals(riskStatus) && !"GOOD".equals(riskLevel)) {
-                // Check for suspicious patterns
-                if (hasSuspiciousPatterns(request)) {
-                    anomalies.add("Suspicious payment pattern detected");
-                    if ("ALLOW".equals(riskStatus)) {
-                        riskStatus = "REVIEW";
-                        riskLevel = "REVIEW";
-                        reason = "Suspicious payment pattern requires review";
-                        requiresManualReview = true;
-                    }
-                }
-
-                // Check amount thresholds
-                if (isAmountSuspicious(request.getAmount())) {
-                    anomalies.add("Suspicious amount detected");
-                    if ("ALLOW".equals(riskStatus)) {
-                        riskStatus = "REVIEW";
-                        riskLevel = "REVIEW";
-                        reason = "Amount exceeds normal thresholds";
-                        requiresManualReview = true;
-                    }
-                }
-
-                // Check supplier consistency
-                if (hasSupplierInconsistency(request)) {
-                    anomalies.add("Supplier information inconsistency");
-                    if ("ALLOW".equals(riskStatus)) {
-                        riskStatus = "REVIEW";
-                        riskLevel = "REVIEW";
-                        reason = "Supplier information requires verification";
-                        requiresManualReview = true;
-                    }
-                }
-
-                // Check for duplicate payments
-                if (hasDuplicatePayment(request)) {
-                    anomalies.add("Potential duplicate payment detected");
+                for (FraudRule rule : fraudRulePipeline.evaluate(context, "REVIEW".equals(riskStatus))) {
+                    anomalies.add(rule.getAnomaly());
                     if ("ALLOW".equals(riskStatus)) {
                         riskStatus = "REVIEW";
                         riskLevel = "REVIEW";
-                        reason = "Duplicate payment pattern detected";
-                        requiresManualReview = true;
-                    }
-                }
-
-                // Check for unusual timing
-                if (hasUnusualTiming(request)) {
-                    anomalies.add("Unusual payment timing detected");
-                    if ("ALLOW".equals(riskStatus)) {
-                        riskStatus = "REVIEW";
-                        riskLevel = "REVIEW";
-                        reason = "Payment timing requires review";
-                        requiresManualReview = true;
-                    }
-                }
-
-                // Check for velocity anomalies
-                if (hasVelocityAnomaly(request)) {
-                    anomalies.add("High-frequency payment pattern detected");
-                    if ("ALLOW".equals(riskStatus)) {
-                        riskStatus = "REVIEW";
-                        riskLevel = "REVIEW";
-                        reason = "High payment velocity detected";
+                        reason = rule.getReason();
                         requiresManualReview = true;
                     }
                 }
@@ -172,6 +162,11 @@ public class FraudDetectionService {
             // 7. Log the analysis result
             logFraudAnalysis(request, riskStatus, riskLevel, anomalies, transactionId);
 
+            // Payments no rule counted still have to be recorded in the shared counters
+            if (sharedPaymentCounters.isEnabled() && !context.hasSharedCounts()) {
+                sharedPaymentCounters.countAndRecord(request.getSupplierIban(), request.getAmount(), transactionId);
+            }
+
         } catch (Exception e) {
             riskStatus = "REVIEW";
             riskLevel = "REVIEW";
@@ -180,6 +175,9 @@ public class FraudDetectionService {
             anomalies.add("Analysis error: " + e.getMessage());
         }
 
+        requestedQueries.record(context.getRequestedQueries());
+        executedQueries.record(context.getExecutedQueries());
+
         return FraudDetectionResponse.builder()
                 .invoiceId(request.getInvoiceId())
                 .riskStatus(riskStatus)
@@ -193,12 +191,47 @@ public class FraudDetectionService {
     }
 
     /**
-     * Get the risk level of an IBAN from the database
+     * @return true while the fact still comes from the database rather than memory or Redis
+     */
+    boolean resolvesFromDatabase(PaymentFact fact) {
+        return switch (fact) {
+            case IBAN_RISK_LEVEL -> !ibanRiskIndex.isReady();
+            case PAYMENTS_LAST_HOUR -> !usesSharedCounters() && !velocityCounters.isReady();
+            case DUPLICATE_PAYMENTS_LAST_24_HOURS -> !usesSharedCounters() && !duplicatePaymentStore.isReady();
+        };
+    }
+
+    /**
+     * @return true if velocity and duplicate counts are shared across replicas through Redis
+     */
+    boolean usesSharedCounters() {
+        return sharedPaymentCounters.isEnabled();
+    }
+
+    /**
+     * Counts earlier payments to the IBAN in the shared counters, recording this one,
+     * or counts them locally if Redis is unavailable
+     */
+    SharedPaymentCounters.Counts countPayments(String iban, BigDecimal amount, String paymentId) {
+        SharedPaymentCounters.Counts counts = sharedPaymentCounters.countAndRecord(iban, amount, paymentId);
+        if (counts != null) {
+            return counts;
+        }
+        return new SharedPaymentCounters.Counts(countPaymentsLastHour(iban), countDuplicatePayments(iban, amount));
+    }
+
+    /**
+     * Get the risk level of an IBAN, from the in-memory index once loaded, otherwise from the database
      */
-    private String getIbanRiskLevel(String iban) {
+    String getIbanRiskLevel(String iban) {
+        if (ibanRiskIndex.isReady()) {
+            String result = ibanRiskIndex.lookup(iban);
+            logger.debug("Index returned IBAN {} with risk level: {}", maskIban(iban), result != null ? "***" : "null");
+            return result;
+        }
         try {
             String sql = "SELECT risk_level FROM risk.iban_risk_lookup WHERE iban = ?";
-            String result = jdbcTemplate.queryForObject(sql, String.class, iban);
+            String result = factQueries.queryForObject(sql, String.class, iban);
             logger.debug("Found IBAN {} with risk level: {}", maskIban(iban), result != null ? "***" : "null");
             return result;
         } catch (Exception e) {
@@ -268,75 +301,6 @@ public class FraudDetectionService {
         }
     }
 
-    /**
-     * Check for suspicious payment patterns
-     */
-    private boolean hasSuspiciousPatterns(FraudDetectionRequest request) {
-        // Check for very small amounts (potential test)
-        if (request.getAmount().compareTo(BigDecimal.valueOf(1)) < 0) {
-            return true;
-        }
-        
-        // Check for very large amounts (potential fraud)
-        if (request.getAmount().compareTo(BigDecimal.valueOf(100000)) > 0) {
-            return true;
-        }
-        
-        // Check for amounts ending in .99 (common fraud pattern)
-        if (request.getAmount().toString().endsWith(".99")) {
-            return true;
-        }
-        
-        // Check for suspicious amount patterns (but not for GOOD IBANs)
-        // GOOD IBANs are expected to have rounded amounts, so don't flag them
-        String ibanRiskLevel = getIbanRiskLevel(request.getSupplierIban());
-        if (!"GOOD".equals(ibanRiskLevel)) {
-            // Check for round numbers (potential test payments) - only for non-GOOD IBANs
-            if (request.getAmount().remainder(BigDecimal.valueOf(1000)).compareTo(BigDecimal.ZERO) == 0) {
-                return true;
-            }
-            
-            // Check for suspicious amount patterns - only for non-GOOD IBANs
-            if (request.getAmount().remainder(BigDecimal.valueOf(100)).compareTo(BigDecimal.ZERO) == 0) {
-                return true; // Round hundreds
-            }
-        }
-        
-        return false;
-    }
-
-    /**
-     * Check if amount is suspicious
-     */
-    private boolean isAmountSuspicious(BigDecimal amount) {
-        // Define suspicious amount thresholds
-        BigDecimal veryHighAmount = new BigDecimal("50000");
-        BigDecimal veryLowAmount = new BigDecimal("0.01");
-        
-        return amount.compareTo(veryHighAmount) > 0 || amount.compareTo(veryLowAmount) < 0;
-    }
-
-    /**
-     * Check for supplier information inconsistency
-     */
-    private boolean hasSupplierInconsistency(FraudDetectionRequest request) {
-        // Check if supplier name contains suspicious patterns
-        String supplierName = request.getSupplierName().toLowerCase();
-        
-        // Check for generic names
-        if (supplierName.contains("test") || supplierName.contains("demo") || 
-            supplierName.contains("example") || supplierName.contains("fake")) {
-            return true;
-        }
-        
-        // Check for very short names
-        if (supplierName.length() < 3) {
-            return true;
-        }
-        
-        return false;
-    }
-
     /**
      * Generate recommendation based on risk assessment
      */
@@ -354,87 +318,58 @@ public class FraudDetectionService {
     }
 
     /**
-     * Log fraud analysis result
+     * Log fraud analysis result, asynchronously; the counters see the payment once the log writer accepts it
      */
     private void logFraudAnalysis(FraudDetectionRequest request, String riskStatus, 
                                  String riskLevel, List<String> anomalies, String transactionId) {
-        try {
-            String sql = """
-                INSERT INTO fraud_analysis_log 
-                (transaction_id, invoice_id, supplier_iban, amount, supplier_name, 
-                 risk_status, risk_level, anomalies, created_at) 
-                VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
-                """;
-            
-            jdbcTemplate.update(sql, 
-                transactionId,
-                request.getInvoiceId(),
-                request.getSupplierIban(),
-                request.getAmount(),
-                request.getSupplierName(),
-                riskStatus,
-                riskLevel,
-                String.join("; ", anomalies),
-                LocalDateTime.now()
-            );
-        } catch (Exception e) {
-            // Log error but don't fail the analysis
-            System.err.println("Failed to log fraud analysis: " + e.getMessage());
+        FraudAnalysisRecord record = FraudAnalysisRecord.of(request, transactionId, riskStatus, riskLevel, anomalies);
+        if (fraudAnalysisLogWriter.submit(record)) {
+            velocityCounters.record(request.getSupplierIban());
+            duplicatePaymentStore.record(request.getSupplierIban(), request.getAmount());
         }
     }
 
     /**
-     * Check for duplicate payment patterns
+     * Count payments with the same amount and IBAN within the last 24 hours,
+     * from the fingerprint store once it is seeded
      */
-    private boolean hasDuplicatePayment(FraudDetectionRequest request) {
+    int countDuplicatePayments(String iban, BigDecimal amount) {
+        if (duplicatePaymentStore.isReady()) {
+            return duplicatePaymentStore.count(iban, amount);
+        }
         try {
-            // Check for same amount and IBAN within last 24 hours
             String sql = """
                 SELECT COUNT(*) FROM fraud_analysis_log 
                 WHERE supplier_iban = ? AND amount = ? 
                 AND created_at > NOW() - INTERVAL '24 hours'
                 """;
             
-            Integer count = jdbcTemplate.queryForObject(sql, Integer.class, 
-                request.getSupplierIban(), request.getAmount());
-            
-            return count != null && count > 0;
+            Integer count = factQueries.queryForObject(sql, Integer.class, iban, amount);
+            return count != null ? count : 0;
         } catch (Exception e) {
-            return false;
+            return 0;
         }
     }
 
     /**
-     * Check for unusual payment timing
+     * Count payments from the same IBAN within the velocity window (the last hour by default),
+     * from the in-memory counters once they are seeded
      */
-    private boolean hasUnusualTiming(FraudDetectionRequest request) {
-        // Check if payment is made outside business hours (simplified)
-        LocalDateTime now = LocalDateTime.now();
-        int hour = now.getHour();
-        
-        // Flag payments made between 11 PM and 6 AM
-        return hour >= 23 || hour <= 6;
-    }
-
-    /**
-     * Check for velocity anomalies (high frequency payments)
-     */
-    private boolean hasVelocityAnomaly(FraudDetectionRequest request) {
+    int countPaymentsLastHour(String iban) {
+        if (velocityCounters.isReady()) {
+            return velocityCounters.count(iban);
+        }
         try {
-            // Check for multiple payments from same IBAN in last hour
             String sql = """
                 SELECT COUNT(*) FROM fraud_analysis_log 
                 WHERE supplier_iban = ? 
-                AND created_at > NOW() - INTERVAL '1 hour'
+                AND created_at > NOW() - make_interval(mins => ?)
                 """;
             
-            Integer count = jdbcTemplate.queryForObject(sql, Integer.class, 
-                request.getSupplierIban());
-            
-            // Flag if more than 3 payments in last hour
-            return count != null && count > 3;
+            Integer count = factQueries.queryForObject(sql, Integer.class, iban, velocityCounters.getWindowMinutes());
+            return count != null ? count : 0;
         } catch (Exception e) {
-            return false;
+            return 0;
         }
     }
 
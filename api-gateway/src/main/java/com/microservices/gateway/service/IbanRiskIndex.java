@@ -0,0 +1,457 @@
+package com.microservices.gateway.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory copy of risk.iban_risk_lookup.
+ * Each IBAN is packed 6 bits per character into fixed-width long words and stored,
+ * sorted, in an off-heap buffer followed by a one-byte risk code, so a lookup is a
+ * binary search over ~1M records instead of a JDBC round-trip.
+ * Changes from risk.iban_risk_changes are applied to a concurrent overlay on top
+ * of the immutable table, so readers never block while deltas arrive.
+ */
+@Component
+public class IbanRiskIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(IbanRiskIndex.class);
+
+    static final int CHARS_PER_WORD = 10;
+    static final int BITS_PER_CHAR = 6;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final boolean enabled;
+    private final int fetchSize;
+    private final String snapshotPath;
+
+    private volatile State state;
+
+    public IbanRiskIndex(JdbcTemplate jdbcTemplate,
+                         PlatformTransactionManager transactionManager,
+                         @Value("${risk-index.enabled:true}") boolean enabled,
+                         @Value("${risk-index.fetch-size:10000}") int fetchSize,
+                         @Value("${risk-index.snapshot.path:}") String snapshotPath) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.enabled = enabled;
+        this.fetchSize = fetchSize;
+        this.snapshotPath = snapshotPath;
+    }
+
+    /**
+     * Loads the table once the application is up, from the snapshot file when one
+     * is configured and still usable; lookups fall back to the database until this completes.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) {
+            logger.info("IBAN risk index disabled, risk lookups will query the database");
+            return;
+        }
+        if (loadSnapshot()) {
+            return;
+        }
+        try {
+            reload();
+        } catch (Exception e) {
+            logger.warn("Failed to load IBAN risk index, risk lookups will query the database: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Rebuilds the table from the database and swaps it in, discarding applied changes.
+     * Called on startup and by the change feed once the overlay grows too large.
+     */
+    public void reload() {
+        long start = System.currentTimeMillis();
+        // Taken before the scan: changes from later transactions are replayed on top
+        long watermark = currentTransactionHorizon(jdbcTemplate);
+        Table loaded = loadTable();
+        this.state = new State(loaded, watermark);
+        logger.info("IBAN risk index loaded {} entries ({} KB off-heap) in {} ms",
+            loaded.count, loaded.memoryBytes() / 1024, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Writes the current database contents to a snapshot file.
+     * @return number of IBANs written
+     */
+    public int exportSnapshot(Path target) throws IOException {
+        long watermark = currentTransactionHorizon(jdbcTemplate);
+        Timestamp highWater = jdbcTemplate.queryForObject("SELECT MAX(updated_at) FROM risk.iban_risk_lookup", Timestamp.class);
+        Table exported = loadTable();
+        IbanRiskSnapshot.write(target, exported, watermark, highWater != null ? highWater.getTime() : -1);
+        return exported.count + exported.unpackable.size();
+    }
+
+    private boolean loadSnapshot() {
+        if (snapshotPath == null || snapshotPath.isBlank()) {
+            return false;
+        }
+        Path path = Path.of(snapshotPath);
+        if (!Files.isReadable(path)) {
+            logger.info("IBAN risk snapshot {} not found, loading from the database", path);
+            return false;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            IbanRiskSnapshot snapshot = IbanRiskSnapshot.read(path);
+            // The change feed replays everything after the snapshot, unless it has been pruned past it
+            Long prunedThrough = jdbcTemplate.queryForObject(
+                "SELECT pruned_through_txid FROM risk.iban_risk_change_retention", Long.class);
+            if (prunedThrough != null && snapshot.watermark <= prunedThrough) {
+                logger.warn("IBAN risk snapshot {} is older than the retained change feed, loading from the database", path);
+                return false;
+            }
+            this.state = new State(snapshot.table, snapshot.watermark);
+            logger.info("IBAN risk index mapped {} entries from snapshot {} (updated through {}) in {} ms",
+                snapshot.table.count, path, Instant.ofEpochMilli(snapshot.highWaterUpdatedAt),
+                System.currentTimeMillis() - start);
+            return true;
+        } catch (Exception e) {
+            logger.warn("Failed to load IBAN risk snapshot {}, loading from the database: {}", path, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @return true once the index has been loaded and can answer lookups
+     */
+    public boolean isReady() {
+        return state != null;
+    }
+
+    /**
+     * Looks up the risk level of an IBAN.
+     * @param iban The IBAN to look up
+     * @return the stored risk level, or null if the IBAN is not listed
+     * @throws IllegalStateException if the index is not loaded yet
+     */
+    public String lookup(String iban) {
+        State current = state;
+        if (current == null) {
+            throw new IllegalStateException("IBAN risk index is not loaded");
+        }
+        if (iban == null) {
+            return null;
+        }
+        Change change = current.changes.get(iban);
+        if (change != null) {
+            return change.riskLevel;
+        }
+        return current.table.lookup(iban);
+    }
+
+    /**
+     * Applies one row of the change feed. Only the feed thread calls this.
+     * @param changeId Id of the change row; older changes than the one applied are ignored
+     * @param iban The changed IBAN
+     * @param riskLevel The new risk level, or null if the IBAN was removed
+     * @return true if the change was applied
+     */
+    public boolean applyChange(long changeId, String iban, String riskLevel) {
+        State current = state;
+        if (current == null || iban == null) {
+            return false;
+        }
+        Change applied = current.changes.get(iban);
+        if (applied != null && applied.id >= changeId) {
+            return false;
+        }
+        current.changes.put(iban, new Change(changeId, riskLevel));
+        return true;
+    }
+
+    /**
+     * @return the transaction horizon the loaded table is consistent with, or -1 if not loaded
+     */
+    public long getWatermark() {
+        State current = state;
+        return current != null ? current.watermark : -1;
+    }
+
+    /**
+     * @return number of IBANs served from the change overlay rather than the table
+     */
+    public int pendingChangeCount() {
+        State current = state;
+        return current != null ? current.changes.size() : 0;
+    }
+
+    public int size() {
+        State current = state;
+        return current != null ? current.table.count + current.table.unpackable.size() : 0;
+    }
+
+    public long memoryBytes() {
+        State current = state;
+        return current != null ? current.table.memoryBytes() : 0;
+    }
+
+    /**
+     * Oldest transaction still running; every change from an earlier transaction
+     * is committed or rolled back and therefore final.
+     */
+    static long currentTransactionHorizon(JdbcTemplate jdbcTemplate) {
+        Long horizon = jdbcTemplate.queryForObject("SELECT txid_snapshot_xmin(txid_current_snapshot())", Long.class);
+        return horizon != null ? horizon : 0;
+    }
+
+    private Table loadTable() {
+        Map<String, Object> stats = jdbcTemplate.queryForMap(
+            "SELECT COUNT(*) AS row_count, COALESCE(MAX(LENGTH(iban)), 0) AS max_length FROM risk.iban_risk_lookup");
+        int expectedRows = ((Number) stats.get("row_count")).intValue();
+        int maxLength = ((Number) stats.get("max_length")).intValue();
+
+        TableBuilder builder = new TableBuilder(wordsFor(maxLength), expectedRows);
+
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(fetchSize);
+        // PostgreSQL only streams with a cursor inside a transaction
+        readOnlyTransaction.executeWithoutResult(status -> streaming.query(
+            "SELECT iban, risk_level FROM risk.iban_risk_lookup ORDER BY iban COLLATE \"C\"",
+            rs -> { builder.add(rs.getString(1), rs.getString(2)); }));
+
+        return builder.build();
+    }
+
+    static int wordsFor(int length) {
+        return Math.max(1, (length + CHARS_PER_WORD - 1) / CHARS_PER_WORD);
+    }
+
+    /**
+     * Maps 0-9 and A-Z onto 1..36 so packed words sort like the strings themselves;
+     * 0 is left for padding.
+     */
+    static int encodeChar(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0' + 1;
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A' + 11;
+        }
+        return -1;
+    }
+
+    /**
+     * Packs an IBAN into the given words.
+     * @return false if the IBAN is too long or contains characters outside [0-9A-Z]
+     */
+    static boolean pack(String iban, long[] words) {
+        int length = iban.length();
+        if (length > words.length * CHARS_PER_WORD) {
+            return false;
+        }
+        for (int w = 0; w < words.length; w++) {
+            long word = 0;
+            for (int i = 0; i < CHARS_PER_WORD; i++) {
+                int pos = w * CHARS_PER_WORD + i;
+                int code = 0;
+                if (pos < length) {
+                    code = encodeChar(iban.charAt(pos));
+                    if (code < 0) {
+                        return false;
+                    }
+                }
+                word = (word << BITS_PER_CHAR) | code;
+            }
+            words[w] = word;
+        }
+        return true;
+    }
+
+    /**
+     * A loaded table together with the changes applied since it was read.
+     */
+    static final class State {
+        final Table table;
+        final long watermark;
+        final ConcurrentHashMap<String, Change> changes = new ConcurrentHashMap<>();
+
+        State(Table table, long watermark) {
+            this.table = table;
+            this.watermark = watermark;
+        }
+    }
+
+    static final class Change {
+        final long id;
+        final String riskLevel;
+
+        Change(long id, String riskLevel) {
+            this.id = id;
+            this.riskLevel = riskLevel;
+        }
+    }
+
+    /**
+     * Immutable, sorted record table: keyWords longs of packed IBAN followed by one risk code byte.
+     */
+    static final class Table {
+        final ByteBuffer records;
+        final int keyWords;
+        final int recordSize;
+        final int count;
+        final String[] levels;
+        // Rows that cannot be packed (lowercase, separators, over-long) are kept verbatim
+        final Map<String, String> unpackable;
+
+        Table(ByteBuffer records, int keyWords, int count, String[] levels, Map<String, String> unpackable) {
+            this.records = records;
+            this.keyWords = keyWords;
+            this.recordSize = keyWords * Long.BYTES + 1;
+            this.count = count;
+            this.levels = levels;
+            this.unpackable = unpackable;
+        }
+
+        String lookup(String iban) {
+            if (iban == null) {
+                return null;
+            }
+            long[] key = new long[keyWords];
+            if (!pack(iban, key)) {
+                return unpackable.get(iban);
+            }
+            int index = find(key);
+            return index >= 0 ? levelAt(index) : null;
+        }
+
+        int find(long[] key) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = compareAt(mid, key);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        int compareAt(int index, long[] key) {
+            int base = index * recordSize;
+            for (int w = 0; w < keyWords; w++) {
+                int cmp = Long.compare(records.getLong(base + w * Long.BYTES), key[w]);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return 0;
+        }
+
+        String levelAt(int index) {
+            int code = records.get(index * recordSize + keyWords * Long.BYTES) & 0xFF;
+            return levels[code - 1];
+        }
+
+        long memoryBytes() {
+            return (long) count * recordSize;
+        }
+    }
+
+    /**
+     * Appends rows in IBAN order and produces a {@link Table}.
+     */
+    static final class TableBuilder {
+        private final int keyWords;
+        private final int recordSize;
+        private final long[] key;
+        private final long[] previous;
+        private final List<String> levels = new ArrayList<>();
+        private final Map<String, String> unpackable = new HashMap<>();
+        private ByteBuffer records;
+        private int count;
+
+        TableBuilder(int keyWords, int expectedRows) {
+            this.keyWords = keyWords;
+            this.recordSize = keyWords * Long.BYTES + 1;
+            this.key = new long[keyWords];
+            this.previous = new long[keyWords];
+            // Leave some headroom for rows inserted between the count and the scan
+            this.records = ByteBuffer.allocateDirect((expectedRows + Math.max(1024, expectedRows / 100)) * recordSize);
+        }
+
+        void add(String iban, String riskLevel) {
+            if (iban == null || riskLevel == null) {
+                return;
+            }
+            if (!pack(iban, key)) {
+                unpackable.put(iban, riskLevel);
+                return;
+            }
+            if (count > 0 && compare(key, previous) <= 0) {
+                throw new IllegalStateException("IBAN rows are not in packed key order");
+            }
+            ensureCapacity();
+            int base = count * recordSize;
+            for (int w = 0; w < keyWords; w++) {
+                records.putLong(base + w * Long.BYTES, key[w]);
+            }
+            records.put(base + keyWords * Long.BYTES, codeFor(riskLevel));
+            System.arraycopy(key, 0, previous, 0, keyWords);
+            count++;
+        }
+
+        Table build() {
+            return new Table(records, keyWords, count, levels.toArray(new String[0]), unpackable);
+        }
+
+        private byte codeFor(String riskLevel) {
+            int index = levels.indexOf(riskLevel);
+            if (index < 0) {
+                if (levels.size() == 255) {
+                    throw new IllegalStateException("Too many distinct risk levels");
+                }
+                levels.add(riskLevel);
+                index = levels.size() - 1;
+            }
+            return (byte) (index + 1);
+        }
+
+        private void ensureCapacity() {
+            if ((count + 1) * recordSize <= records.capacity()) {
+                return;
+            }
+            ByteBuffer larger = ByteBuffer.allocateDirect(records.capacity() * 2);
+            larger.put(records.duplicate().clear().limit(count * recordSize));
+            records = larger;
+        }
+
+        private static int compare(long[] a, long[] b) {
+            for (int i = 0; i < a.length; i++) {
+                int cmp = Long.compare(a[i], b[i]);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.microservices.gateway.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary snapshot of an {@link IbanRiskIndex.Table}, so a node can map the sorted
+ * records straight from disk instead of reading every row over JDBC.
+ *
+ * Layout (big-endian):
+ * <pre>
+ *  0  int   magic "IBRS"
+ *  4  int   format version
+ *  8  int   key words per record
+ * 12  int   record count
+ * 16  long  transaction horizon the snapshot is consistent with (change feed position)
+ * 24  long  highest updated_at in the table, epoch millis (-1 if none)
+ * 32  long  creation time, epoch millis
+ * 40  int   number of risk levels
+ * 44  int   number of unpackable rows
+ * 48  int   offset of the first record
+ * 52  int   CRC32C of every other byte in the file
+ * 56  risk levels, then unpackable iban/level pairs, as length-prefixed UTF-8
+ *     padding to an 8-byte boundary, then the records exactly as the table holds them
+ * </pre>
+ */
+final class IbanRiskSnapshot {
+
+    static final int MAGIC = 0x49425253;
+    static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 56;
+    private static final int CHECKSUM_OFFSET = 52;
+
+    final IbanRiskIndex.Table table;
+    final long watermark;
+    final long highWaterUpdatedAt;
+    final long createdAt;
+
+    private IbanRiskSnapshot(IbanRiskIndex.Table table, long watermark, long highWaterUpdatedAt, long createdAt) {
+        this.table = table;
+        this.watermark = watermark;
+        this.highWaterUpdatedAt = highWaterUpdatedAt;
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * Writes the table to a temporary file next to the target and moves it into place,
+     * so readers never map a partially written snapshot.
+     */
+    static void write(Path target, IbanRiskIndex.Table table, long watermark, long highWaterUpdatedAt) throws IOException {
+        ByteBuffer metadata = encodeMetadata(table);
+        int recordsOffset = align(HEADER_SIZE + metadata.remaining());
+        long recordBytes = (long) table.count * table.recordSize;
+
+        ByteBuffer header = ByteBuffer.allocate(recordsOffset);
+        header.putInt(MAGIC)
+            .putInt(VERSION)
+            .putInt(table.keyWords)
+            .putInt(table.count)
+            .putLong(watermark)
+            .putLong(highWaterUpdatedAt)
+            .putLong(System.currentTimeMillis())
+            .putInt(table.levels.length)
+            .putInt(table.unpackable.size())
+            .putInt(recordsOffset)
+            .putInt(0);
+        header.put(metadata);
+        header.clear();
+
+        ByteBuffer records = table.records.duplicate();
+        records.clear().limit((int) recordBytes);
+
+        CRC32C crc = new CRC32C();
+        crc.update(header.duplicate().limit(CHECKSUM_OFFSET));
+        crc.update(header.duplicate().position(HEADER_SIZE));
+        crc.update(records.duplicate());
+        header.putInt(CHECKSUM_OFFSET, (int) crc.getValue());
+
+        Path parent = target.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = Files.createTempFile(parent, target.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            while (records.hasRemaining()) {
+                channel.write(records);
+            }
+            channel.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps a snapshot read-only and verifies its header and checksum.
+     * @throws IOException if the file cannot be read or is not a valid snapshot
+     */
+    static IbanRiskSnapshot read(Path source) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot too large to map: " + channel.size() + " bytes");
+            }
+            // The mapping stays valid after the channel is closed
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (mapped.capacity() < HEADER_SIZE || mapped.getInt(0) != MAGIC) {
+            throw new IOException("Not an IBAN risk snapshot: " + source);
+        }
+        int version = mapped.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported IBAN risk snapshot version " + version);
+        }
+        int keyWords = mapped.getInt(8);
+        int count = mapped.getInt(12);
+        long watermark = mapped.getLong(16);
+        long highWaterUpdatedAt = mapped.getLong(24);
+        long createdAt = mapped.getLong(32);
+        int levelCount = mapped.getInt(40);
+        int unpackableCount = mapped.getInt(44);
+        int recordsOffset = mapped.getInt(48);
+        int recordSize = keyWords * Long.BYTES + 1;
+        if (keyWords < 1 || count < 0 || recordsOffset < HEADER_SIZE
+                || (long) recordsOffset + (long) count * recordSize != mapped.capacity()) {
+            throw new IOException("Corrupt IBAN risk snapshot header: " + source);
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(mapped.duplicate().limit(CHECKSUM_OFFSET));
+        crc.update(mapped.duplicate().position(HEADER_SIZE));
+        if ((int) crc.getValue() != mapped.getInt(CHECKSUM_OFFSET)) {
+            throw new IOException("IBAN risk snapshot checksum mismatch: " + source);
+        }
+
+        ByteBuffer metadata = mapped.duplicate().position(HEADER_SIZE).limit(recordsOffset);
+        String[] levels = new String[levelCount];
+        for (int i = 0; i < levelCount; i++) {
+            levels[i] = readString(metadata);
+        }
+        Map<String, String> unpackable = new HashMap<>();
+        for (int i = 0; i < unpackableCount; i++) {
+            unpackable.put(readString(metadata), readString(metadata));
+        }
+
+        ByteBuffer records = mapped.slice(recordsOffset, count * recordSize);
+        IbanRiskIndex.Table table = new IbanRiskIndex.Table(records, keyWords, count, levels, unpackable);
+        return new IbanRiskSnapshot(table, watermark, highWaterUpdatedAt, createdAt);
+    }
+
+    private static ByteBuffer encodeMetadata(IbanRiskIndex.Table table) {
+        int size = 0;
+        for (String level : table.levels) {
+            size += Short.BYTES + utf8(level).length;
+        }
+        for (Map.Entry<String, String> entry : table.unpackable.entrySet()) {
+            size += 2 * Short.BYTES + utf8(entry.getKey()).length + utf8(entry.getValue()).length;
+        }
+        ByteBuffer metadata = ByteBuffer.allocate(size);
+        for (String level : table.levels) {
+            writeString(metadata, level);
+        }
+        for (Map.Entry<String, String> entry : table.unpackable.entrySet()) {
+            writeString(metadata, entry.getKey());
+            writeString(metadata, entry.getValue());
+        }
+        return metadata.flip();
+    }
+
+    private static void writeString(ByteBuffer buffer, String value) {
+        byte[] bytes = utf8(value);
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = Short.toUnsignedInt(buffer.getShort());
+        if (length > buffer.remaining()) {
+            throw new IOException("Corrupt IBAN risk snapshot metadata");
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int align(int offset) {
+        return (offset + Long.BYTES - 1) & -Long.BYTES;
+    }
+}
@@ -0,0 +1,65 @@
+package com.microservices.gateway.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Export job for the IBAN risk snapshot. Started with
+ * {@code --export-risk-snapshot[=/path/to/file]} the application writes the snapshot
+ * (to risk-index.snapshot.path when no path is given) and exits instead of serving traffic.
+ */
+@Component
+public class IbanRiskSnapshotExporter implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(IbanRiskSnapshotExporter.class);
+
+    static final String EXPORT_OPTION = "export-risk-snapshot";
+
+    private final IbanRiskIndex ibanRiskIndex;
+    private final ApplicationContext applicationContext;
+    private final String snapshotPath;
+
+    public IbanRiskSnapshotExporter(IbanRiskIndex ibanRiskIndex,
+                                    ApplicationContext applicationContext,
+                                    @Value("${risk-index.snapshot.path:}") String snapshotPath) {
+        this.ibanRiskIndex = ibanRiskIndex;
+        this.applicationContext = applicationContext;
+        this.snapshotPath = snapshotPath;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption(EXPORT_OPTION)) {
+            return;
+        }
+        List<String> values = args.getOptionValues(EXPORT_OPTION);
+        String target = values.isEmpty() || values.get(0).isBlank() ? snapshotPath : values.get(0);
+
+        int exitCode = 0;
+        if (target == null || target.isBlank()) {
+            logger.error("No snapshot path given; pass --{}=<file> or set risk-index.snapshot.path", EXPORT_OPTION);
+            exitCode = 2;
+        } else {
+            try {
+                long start = System.currentTimeMillis();
+                int exported = ibanRiskIndex.exportSnapshot(Path.of(target));
+                logger.info("Exported {} IBANs to risk snapshot {} in {} ms",
+                    exported, target, System.currentTimeMillis() - start);
+            } catch (Exception e) {
+                logger.error("Failed to export IBAN risk snapshot to {}: {}", target, e.getMessage());
+                exitCode = 1;
+            }
+        }
+        int code = exitCode;
+        System.exit(SpringApplication.exit(applicationContext, () -> code));
+    }
+}
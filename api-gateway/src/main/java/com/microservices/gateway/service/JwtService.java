@@ -1,8 +1,11 @@
 package com.microservices.gateway.service;
 
 import com.microservices.gateway.model.User;
+import com.microservices.gateway.security.VerifiedToken;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
+import jakarta.servlet.http.HttpServletRequest;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
@@ -13,11 +16,16 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
+import javax.crypto.Mac;
 import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.Date;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
@@ -27,19 +35,43 @@ public class JwtService {
 
     private final JdbcTemplate jdbcTemplate;
     private final RedisTemplate<String, Object> redisTemplate;
+    private final TokenRevocationList revocationList;
+    private final VerifiedTokenCache tokenCache;
+    private final TokenRevocationBroadcast revocationBroadcast;
     private final BCryptPasswordEncoder passwordEncoder;
     private final SecretKey secretKey;
+    // Immutable and thread-safe, so built once
+    private final JwtParser jwtParser;
+    private final ThreadLocal<Mac> fingerprintMac;
     private final long jwtExpiration;
     private final long jwtRefreshExpiration;
 
     public JwtService(JdbcTemplate jdbcTemplate, 
                       RedisTemplate<String, Object> redisTemplate,
+                      TokenRevocationList revocationList,
+                      VerifiedTokenCache tokenCache,
+                      TokenRevocationBroadcast revocationBroadcast,
                       @Value("${jwt.secret}") String secret,
+                      @Value("${jwt.fingerprint-secret:${jwt.secret}}") String fingerprintSecret,
                       @Value("${jwt.expiration}") long jwtExpiration,
                       @Value("${jwt.refresh-expiration}") long jwtRefreshExpiration) {
         this.jdbcTemplate = jdbcTemplate;
         this.redisTemplate = redisTemplate;
+        this.revocationList = revocationList;
+        this.tokenCache = tokenCache;
+        this.revocationBroadcast = revocationBroadcast;
         this.passwordEncoder = new BCryptPasswordEncoder();
+
+        SecretKeySpec fingerprintKey = new SecretKeySpec(fingerprintSecret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        this.fingerprintMac = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(fingerprintKey);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HmacSHA256 unavailable", e);
+            }
+        });
         
         // Handle both base64-encoded and plain text secrets
         SecretKey tempSecretKey;
@@ -51,6 +83,7 @@ public class JwtService {
             tempSecretKey = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
         }
         this.secretKey = tempSecretKey;
+        this.jwtParser = Jwts.parser().verifyWith(secretKey).build();
         this.jwtExpiration = jwtExpiration;
         this.jwtRefreshExpiration = jwtRefreshExpiration;
     }
@@ -72,7 +105,7 @@ public class JwtService {
         storeTokenInDatabase(user.getId(), token, expiryDate);
         
         // Store token in Redis for fast validation
-        storeTokenInRedis(token, user.getId(), jwtExpiration);
+        storeTokenInRedis(fingerprint(token), user.getId(), jwtExpiration);
 
         return token;
     }
@@ -96,27 +129,72 @@ public class JwtService {
         storeTokenInDatabase(user.getId(), token, expiryDate);
         
         // Store token in Redis for fast validation
-        storeTokenInRedis(token, user.getId(), expirationTime);
+        storeTokenInRedis(fingerprint(token), user.getId(), expirationTime);
 
         return token;
     }
 
     public boolean validateToken(String token) {
+        return verify(token) != null;
+    }
+
+    /**
+     * Returns the request's verified token, verifying it only if this request has
+     * not done so already (normally {@link com.microservices.gateway.security.JwtAuthenticationFilter} has).
+     * @return null if the token is not valid
+     */
+    public VerifiedToken verify(HttpServletRequest request, String token) {
+        Object attribute = request.getAttribute(VerifiedToken.REQUEST_ATTRIBUTE);
+        if (attribute instanceof VerifiedToken verified && verified.getToken().equals(token)) {
+            return verified;
+        }
+        VerifiedToken verified = verify(token);
+        if (verified != null) {
+            request.setAttribute(VerifiedToken.REQUEST_ATTRIBUTE, verified);
+        }
+        return verified;
+    }
+
+    /**
+     * Checks the token's signature, expiry and revocation status.
+     * @return the verified token, or null if it is not valid
+     */
+    public VerifiedToken verify(String token) {
         try {
             if (token == null || token.trim().isEmpty()) {
-                return false;
+                return null;
+            }
+            String fingerprint = fingerprint(token);
+
+            // Seen before and not revoked since: skip the signature check
+            if (revocationList.isReady()) {
+                VerifiedToken cached = tokenCache.get(fingerprint, token);
+                if (cached != null) {
+                    return isRevoked(cached) ? null : cached;
+                }
             }
             
             // First validate JWT signature and expiration
             Claims claims = getClaimsFromToken(token);
             if (claims.getExpiration().before(new Date())) {
-                return false; // Token expired
+                return null; // Token expired
             }
+            VerifiedToken verified = new VerifiedToken(token, fingerprint, claims);
 
-            // Check Redis cache (with error handling)
+            // Only this service can sign tokens, so a signed, unexpired token is
+            // valid unless it has been revoked
+            if (revocationList.isReady()) {
+                if (isRevoked(verified)) {
+                    return null;
+                }
+                tokenCache.put(verified);
+                return verified;
+            }
+
+            // Revocation list not loaded yet: check Redis, then the database
             try {
-                if (isTokenInRedis(token)) {
-                    return true;
+                if (isTokenInRedis(fingerprint)) {
+                    return verified;
                 }
             } catch (Exception e) {
                 // Redis might be down, continue to database check
@@ -124,45 +202,65 @@ public class JwtService {
 
             // Check database (with error handling)
             try {
-                if (isTokenInDatabase(token)) {
+                if (isTokenInDatabase(fingerprint)) {
                     // Refresh Redis cache if possible
                     try {
-                        UUID userId = UUID.fromString(claims.getSubject());
-                        storeTokenInRedis(token, userId, jwtExpiration);
+                        storeTokenInRedis(fingerprint, verified.getUserId(), jwtExpiration);
                     } catch (Exception e) {
                         // Redis might be down, but token is still valid
                     }
-                    return true;
+                    return verified;
                 }
             } catch (Exception e) {
                 // Database might be down, but we can still validate JWT signature
-                return true; // If JWT is valid, allow access
+                return verified; // If JWT is valid, allow access
             }
 
-            return false;
+            return null;
         } catch (Exception e) {
-            return false;
+            return null;
         }
     }
 
+    private boolean isRevoked(VerifiedToken verified) {
+        return revocationList.isRevoked(verified.getFingerprint()) || revocationList.isUserInactive(verified.getUserId());
+    }
+
     public Claims getClaimsFromToken(String token) {
-        return Jwts.parser()
-                .verifyWith(secretKey)
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+        return jwtParser.parseSignedClaims(token).getPayload();
     }
 
     public void revokeToken(String token) {
+        String fingerprint = fingerprint(token);
+        long expiresAt;
+        UUID userId;
         try {
-            // Revoke in database
-            jdbcTemplate.update(
-                "UPDATE jwt_tokens SET is_revoked = true, revoked_at = ? WHERE token_hash = ?",
-                LocalDateTime.now(), hashToken(token)
+            Claims claims = getClaimsFromToken(token);
+            expiresAt = claims.getExpiration().getTime();
+            userId = UUID.fromString(claims.getSubject());
+        } catch (Exception e) {
+            // Invalid or expired token, nothing to revoke
+            return;
+        }
+        // Takes effect here at once and on the other instances as the broadcast
+        // arrives; the database row covers any instance that misses it
+        revocationList.revoke(fingerprint, expiresAt);
+        revocationBroadcast.publish(fingerprint, expiresAt);
+        try {
+            // Tokens from before V13 or whose insert failed have no row under their
+            // fingerprint, and without one the revocation is lost on restart
+            LocalDateTime now = LocalDateTime.now();
+            jdbcTemplate.update("""
+                INSERT INTO jwt_tokens (user_id, token_hash, expires_at, is_revoked, revoked_at, created_at)
+                VALUES (?, ?, ?, true, ?, ?)
+                ON CONFLICT (token_hash) DO UPDATE SET is_revoked = true, revoked_at = EXCLUDED.revoked_at
+                """,
+                userId, fingerprint,
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(expiresAt), ZoneId.systemDefault()), now, now
             );
             
             // Remove from Redis
-            redisTemplate.delete("jwt:" + token);
+            redisTemplate.delete("jwt:" + fingerprint);
             
         } catch (Exception e) {
             // Log error but don't throw
@@ -211,13 +309,7 @@ public class JwtService {
 
     private boolean isTokenExpired(String token) {
         try {
-            return Jwts.parser()
-                    .verifyWith(secretKey)
-                    .build()
-                    .parseSignedClaims(token)
-                    .getPayload()
-                    .getExpiration()
-                    .before(new Date());
+            return getClaimsFromToken(token).getExpiration().before(new Date());
         } catch (Exception e) {
             return true;
         }
@@ -250,11 +342,13 @@ public class JwtService {
 
     private void storeTokenInDatabase(UUID userId, String token, Date expiresAt) {
         try {
-            String tokenHash = hashToken(token);
+            String tokenHash = fingerprint(token);
             LocalDateTime expiresAtLocal = expiresAt.toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime();
             
+            // Two logins within the same second produce the same token
             jdbcTemplate.update(
-                "INSERT INTO jwt_tokens (user_id, token_hash, expires_at, is_revoked, created_at) VALUES (?, ?, ?, false, ?)",
+                "INSERT INTO jwt_tokens (user_id, token_hash, expires_at, is_revoked, created_at) VALUES (?, ?, ?, false, ?) " +
+                "ON CONFLICT (token_hash) DO NOTHING",
                 userId, tokenHash, expiresAtLocal, LocalDateTime.now()
             );
         } catch (Exception e) {
@@ -262,31 +356,31 @@ public class JwtService {
         }
     }
 
-    private boolean isTokenInDatabase(String token) {
+    private boolean isTokenInDatabase(String fingerprint) {
         try {
-            String tokenHash = hashToken(token);
-            String sql = "SELECT COUNT(*) FROM jwt_tokens WHERE token_hash = ? AND is_revoked = false AND expires_at > ?";
+            String sql = "SELECT EXISTS (SELECT 1 FROM jwt_tokens t JOIN users u ON u.id = t.user_id " +
+                         "WHERE t.token_hash = ? AND t.is_revoked = false AND t.expires_at > ? AND u.is_active = true)";
             
-            Integer count = jdbcTemplate.queryForObject(sql, Integer.class, tokenHash, LocalDateTime.now());
-            return count != null && count > 0;
+            Boolean exists = jdbcTemplate.queryForObject(sql, Boolean.class, fingerprint, LocalDateTime.now());
+            return Boolean.TRUE.equals(exists);
         } catch (Exception e) {
             // Database might be down, return false
             return false;
         }
     }
 
-    private void storeTokenInRedis(String token, UUID userId, long expirationMs) {
+    private void storeTokenInRedis(String fingerprint, UUID userId, long expirationMs) {
         try {
-            String key = "jwt:" + token;
+            String key = "jwt:" + fingerprint;
             redisTemplate.opsForValue().set(key, userId.toString(), expirationMs, TimeUnit.MILLISECONDS);
         } catch (Exception e) {
             // Redis might be down, but token generation can still work
         }
     }
 
-    private boolean isTokenInRedis(String token) {
+    private boolean isTokenInRedis(String fingerprint) {
         try {
-            String key = "jwt:" + token;
+            String key = "jwt:" + fingerprint;
             return redisTemplate.hasKey(key);
         } catch (Exception e) {
             // Redis might be down, return false
@@ -294,8 +388,12 @@ public class JwtService {
         }
     }
 
-    private String hashToken(String token) {
-        return passwordEncoder.encode(token);
+    /**
+     * Keyed HMAC-SHA-256 of the token, hex encoded: the same for every call, so it
+     * can be looked up in jwt_tokens and Redis, and useless without the key.
+     */
+    String fingerprint(String token) {
+        return HexFormat.of().formatHex(fingerprintMac.get().doFinal(token.getBytes(StandardCharsets.UTF_8)));
     }
 
     private RowMapper<User> userRowMapper() {
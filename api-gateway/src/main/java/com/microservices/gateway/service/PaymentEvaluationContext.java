@@ -0,0 +1,186 @@
+package com.microservices.gateway.service;
+
+import com.microservices.gateway.model.FraudDetectionRequest;
+
+import java.math.BigDecimal;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Facts about one payment, resolved on first use and then shared by every check,
+ * so a single analysis never queries the same IBAN twice. Facts that need I/O can
+ * be prefetched together, concurrently, before the checks that read them.
+ * Also counts the database round-trips the checks asked for against the ones
+ * actually made, for the fraud.analysis.queries metric. Only the request thread
+ * may use an instance.
+ */
+public class PaymentEvaluationContext {
+
+    private final FraudDetectionRequest request;
+    private final FraudDetectionService facts;
+    private final PaymentFactLoader factLoader;
+    private final String paymentId;
+
+    private final Map<PaymentFact, Object> resolved = new EnumMap<>(PaymentFact.class);
+    private final Set<PaymentFact> resolvedFromDatabase = EnumSet.noneOf(PaymentFact.class);
+    private String amountText;
+    private String normalizedSupplierName;
+    private SharedPaymentCounters.Counts sharedCounts;
+
+    private int requestedQueries;
+    private int executedQueries;
+
+    PaymentEvaluationContext(FraudDetectionRequest request, String paymentId,
+                             FraudDetectionService facts, PaymentFactLoader factLoader) {
+        this.request = request;
+        this.paymentId = paymentId;
+        this.facts = facts;
+        this.factLoader = factLoader;
+    }
+
+    public FraudDetectionRequest getRequest() {
+        return request;
+    }
+
+    public String getSupplierIban() {
+        return request.getSupplierIban();
+    }
+
+    public BigDecimal getAmount() {
+        return request.getAmount();
+    }
+
+    /**
+     * @return the amount as submitted, e.g. "120.99"
+     */
+    public String getAmountText() {
+        if (amountText == null) {
+            amountText = request.getAmount().toString();
+        }
+        return amountText;
+    }
+
+    /**
+     * @return the supplier name in lower case
+     */
+    public String getNormalizedSupplierName() {
+        if (normalizedSupplierName == null) {
+            normalizedSupplierName = request.getSupplierName().toLowerCase();
+        }
+        return normalizedSupplierName;
+    }
+
+    /**
+     * @return the listed risk level of the supplier IBAN, or null if not listed
+     */
+    public String getIbanRiskLevel() {
+        return (String) get(PaymentFact.IBAN_RISK_LEVEL);
+    }
+
+    /**
+     * @return payments logged for the supplier IBAN in the last hour
+     */
+    public int getPaymentsLastHour() {
+        return (Integer) get(PaymentFact.PAYMENTS_LAST_HOUR);
+    }
+
+    /**
+     * @return payments logged for the same IBAN and amount in the last 24 hours
+     */
+    public int getDuplicatePaymentsLast24Hours() {
+        return (Integer) get(PaymentFact.DUPLICATE_PAYMENTS_LAST_24_HOURS);
+    }
+
+    /**
+     * Resolves the given facts concurrently if more than one of them still needs a
+     * database round-trip; the rest are left to be resolved on first use. Facts not
+     * resolved within the loader's deadline get the same fallback as a failed query.
+     */
+    public void prefetch(Set<PaymentFact> wanted) {
+        EnumSet<PaymentFact> pending = EnumSet.noneOf(PaymentFact.class);
+        for (PaymentFact fact : wanted) {
+            if (!resolved.containsKey(fact) && needsQuery(fact)) {
+                pending.add(fact);
+            }
+        }
+        if (pending.size() < 2) {
+            return;
+        }
+        Map<PaymentFact, Object> loaded = factLoader.loadAll(pending, this::resolve);
+        for (PaymentFact fact : pending) {
+            store(fact, loaded.containsKey(fact) ? loaded.get(fact) : fallback(fact));
+        }
+    }
+
+    /**
+     * @return true once the payment has been counted, and so recorded, in the shared counters
+     */
+    boolean hasSharedCounts() {
+        return sharedCounts != null;
+    }
+
+    /**
+     * @return database round-trips the checks asked for, i.e. what they would cost without this context
+     */
+    public int getRequestedQueries() {
+        return requestedQueries;
+    }
+
+    /**
+     * @return database round-trips actually made
+     */
+    public int getExecutedQueries() {
+        return executedQueries;
+    }
+
+    private Object get(PaymentFact fact) {
+        if (!resolved.containsKey(fact)) {
+            store(fact, resolve(fact));
+        }
+        if (resolvedFromDatabase.contains(fact)) {
+            requestedQueries++;
+        }
+        return resolved.get(fact);
+    }
+
+    private boolean needsQuery(PaymentFact fact) {
+        return facts.resolvesFromDatabase(fact);
+    }
+
+    private void store(PaymentFact fact, Object value) {
+        if (facts.resolvesFromDatabase(fact)) {
+            resolvedFromDatabase.add(fact);
+            executedQueries++;
+        }
+        resolved.put(fact, value);
+    }
+
+    // May run on a loader thread, so it only touches the request and the thread-safe service
+    private Object resolve(PaymentFact fact) {
+        return switch (fact) {
+            case IBAN_RISK_LEVEL -> facts.getIbanRiskLevel(request.getSupplierIban());
+            case PAYMENTS_LAST_HOUR -> facts.usesSharedCounters()
+                ? sharedCounts().getPaymentsInWindow()
+                : facts.countPaymentsLastHour(request.getSupplierIban());
+            case DUPLICATE_PAYMENTS_LAST_24_HOURS -> facts.usesSharedCounters()
+                ? sharedCounts().getDuplicatePayments()
+                : facts.countDuplicatePayments(request.getSupplierIban(), request.getAmount());
+        };
+    }
+
+    // Both counts come from one call; shared counts never count as database facts, so
+    // they are not prefetched and this only runs on the request thread
+    private SharedPaymentCounters.Counts sharedCounts() {
+        if (sharedCounts == null) {
+            sharedCounts = facts.countPayments(request.getSupplierIban(), request.getAmount(), paymentId);
+        }
+        return sharedCounts;
+    }
+
+    // Same answers the queries give when they fail
+    private static Object fallback(PaymentFact fact) {
+        return fact == PaymentFact.IBAN_RISK_LEVEL ? null : 0;
+    }
+}
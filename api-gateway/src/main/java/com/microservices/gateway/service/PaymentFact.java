@@ -0,0 +1,11 @@
+package com.microservices.gateway.service;
+
+/**
+ * Facts a {@link PaymentEvaluationContext} resolves with blocking I/O, which can be
+ * fetched concurrently ahead of the checks that read them.
+ */
+public enum PaymentFact {
+    IBAN_RISK_LEVEL,
+    PAYMENTS_LAST_HOUR,
+    DUPLICATE_PAYMENTS_LAST_24_HOURS
+}
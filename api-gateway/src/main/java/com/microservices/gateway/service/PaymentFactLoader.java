@@ -0,0 +1,112 @@
+package com.microservices.gateway.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Resolves independent payment facts concurrently, one virtual thread each, so an
+ * analysis waits for the slowest query instead of their sum. The calling thread
+ * waits for all of them up to a shared deadline; on timeout or failure the
+ * remaining tasks are cancelled and their facts left out of the result.
+ */
+@Component
+public class PaymentFactLoader {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentFactLoader.class);
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("payment-fact-", 0).factory());
+    private final long timeoutNanos;
+    private final Timer loadTimer;
+    private final Counter timeouts;
+    private final Counter failures;
+
+    public PaymentFactLoader(MeterRegistry meterRegistry,
+                             @Value("${fraud-analysis.io-timeout-ms:500}") long timeoutMs) {
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        this.loadTimer = Timer.builder("fraud.analysis.facts.load")
+            .description("Time to resolve payment facts concurrently")
+            .register(meterRegistry);
+        this.timeouts = Counter.builder("fraud.analysis.facts.incomplete")
+            .tag("cause", "timeout")
+            .description("Concurrent fact loads cut short")
+            .register(meterRegistry);
+        this.failures = Counter.builder("fraud.analysis.facts.incomplete")
+            .tag("cause", "failure")
+            .description("Concurrent fact loads cut short")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Resolves the given facts concurrently.
+     * @return the facts resolved before the deadline; missing facts timed out or failed
+     */
+    Map<PaymentFact, Object> loadAll(Set<PaymentFact> facts, Function<PaymentFact, Object> resolver) {
+        long start = System.nanoTime();
+        long deadline = start + timeoutNanos;
+        Map<PaymentFact, Future<Object>> tasks = new EnumMap<>(PaymentFact.class);
+        for (PaymentFact fact : facts) {
+            tasks.put(fact, executor.submit(() -> resolver.apply(fact)));
+        }
+
+        Map<PaymentFact, Object> results = new EnumMap<>(PaymentFact.class);
+        String incomplete = null;
+        try {
+            for (Map.Entry<PaymentFact, Future<Object>> task : tasks.entrySet()) {
+                results.put(task.getKey(), task.getValue().get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+            }
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            incomplete = "not resolved within " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms";
+        } catch (ExecutionException e) {
+            failures.increment();
+            incomplete = "failed: " + e.getCause().getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            incomplete = "interrupted";
+        } finally {
+            for (Map.Entry<PaymentFact, Future<Object>> task : tasks.entrySet()) {
+                // Keep whatever finished before the deadline, cancel the rest
+                if (task.getValue().state() == Future.State.SUCCESS) {
+                    results.putIfAbsent(task.getKey(), task.getValue().resultNow());
+                } else {
+                    task.getValue().cancel(true);
+                }
+            }
+            loadTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        if (incomplete != null) {
+            logger.warn("Payment facts {} {}", missing(facts, results), incomplete);
+        }
+        return results;
+    }
+
+    private static Set<PaymentFact> missing(Set<PaymentFact> facts, Map<PaymentFact, Object> results) {
+        Set<PaymentFact> missing = EnumSet.copyOf(facts);
+        missing.removeAll(results.keySet());
+        return missing;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
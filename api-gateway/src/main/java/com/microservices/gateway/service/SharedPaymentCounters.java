@@ -0,0 +1,151 @@
+package com.microservices.gateway.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Velocity and duplicate counts shared by all gateway replicas through Redis, so
+ * a supplier paid through several nodes is counted once across them.
+ * A payment is counted and recorded by one Lua script call, atomically, so
+ * concurrent payments on different nodes cannot both see the count before the
+ * other. Per IBAN the script keeps a sorted set of payment times for velocity and
+ * hourly hashes of amount counts for duplicates, all expiring with the window and
+ * sharing one hash tag so they stay on one cluster slot. Windows are reckoned on
+ * the Redis clock, so replicas with skewed clocks still share the same buckets.
+ * When Redis fails the caller falls back to its local counters; Redis is then left
+ * alone for a short while instead of paying its timeout on every payment.
+ */
+@Component
+public class SharedPaymentCounters {
+
+    private static final Logger logger = LoggerFactory.getLogger(SharedPaymentCounters.class);
+
+    // KEYS[1]: velocity sorted set, KEYS[2..]: duplicate buckets, newest hour first,
+    // from the hour after the caller's current one to the hour before its window
+    // ARGV: velocity window ms, payment member, amount in minor units, bucket TTL s,
+    // hour of KEYS[2], duplicate window hours
+    // Returns {payments in the velocity window, duplicate payments}
+    @SuppressWarnings("unchecked")
+    private static final RedisScript<List<Long>> COUNT_AND_RECORD = (RedisScript<List<Long>>) (RedisScript<?>)
+        new DefaultRedisScript<>("""
+        local time = redis.call('TIME')
+        local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+        redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', now - tonumber(ARGV[1]))
+        local velocity = redis.call('ZCARD', KEYS[1])
+        local window = tonumber(ARGV[6])
+        -- The caller passes a spare hour either side, so up to an hour of clock skew
+        -- still finds the bucket of the current Redis hour
+        local current = 2 + tonumber(ARGV[5]) - math.floor(now / 3600000)
+        current = math.max(2, math.min(current, #KEYS - window))
+        local duplicates = 0
+        for i = current, current + window do
+            local count = redis.call('HGET', KEYS[i], ARGV[3])
+            if count then
+                duplicates = duplicates + tonumber(count)
+            end
+        end
+        redis.call('ZADD', KEYS[1], now, ARGV[2])
+        redis.call('PEXPIRE', KEYS[1], ARGV[1])
+        redis.call('HINCRBY', KEYS[current], ARGV[3], 1)
+        redis.call('EXPIRE', KEYS[current], ARGV[4])
+        return {velocity, duplicates}
+        """, List.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final boolean enabled;
+    private final long velocityWindowMs;
+    private final int duplicateWindowHours;
+    private final long retryAfterMs;
+    private final Counter fallbacks;
+
+    private volatile long unavailableUntil;
+
+    public SharedPaymentCounters(StringRedisTemplate redisTemplate,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${payment-counters.redis.enabled:false}") boolean enabled,
+                                 @Value("${payment-counters.redis.retry-after-ms:5000}") long retryAfterMs,
+                                 @Value("${velocity.window-minutes:60}") int velocityWindowMinutes,
+                                 @Value("${duplicates.window-hours:24}") int duplicateWindowHours) {
+        this.redisTemplate = redisTemplate;
+        this.enabled = enabled;
+        this.retryAfterMs = retryAfterMs;
+        this.velocityWindowMs = TimeUnit.MINUTES.toMillis(velocityWindowMinutes);
+        this.duplicateWindowHours = duplicateWindowHours;
+        this.fallbacks = Counter.builder("payment.counters.redis.fallback")
+            .description("Payments counted locally because Redis was unavailable")
+            .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Counts the payments made before this one and records it, in one round-trip.
+     * @param paymentId unique per payment, so retries of the same analysis are not counted twice
+     * @return the counts, or null if Redis is disabled or unavailable
+     */
+    public Counts countAndRecord(String iban, BigDecimal amount, String paymentId) {
+        if (!enabled || iban == null || amount == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() < unavailableUntil) {
+            fallbacks.increment();
+            return null;
+        }
+        String tag = "{" + Long.toHexString(Fingerprints.ofIban(iban)) + "}";
+        long hour = TimeUnit.MILLISECONDS.toHours(System.currentTimeMillis());
+        List<String> keys = new ArrayList<>(duplicateWindowHours + 4);
+        keys.add("fraud:velocity:" + tag);
+        for (long h = hour + 1; h >= hour - duplicateWindowHours - 1; h--) {
+            keys.add("fraud:duplicates:" + tag + ":" + h);
+        }
+        String minorUnits = amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().toString();
+        try {
+            List<Long> result = redisTemplate.execute(COUNT_AND_RECORD, keys,
+                Long.toString(velocityWindowMs), paymentId, minorUnits,
+                Long.toString(TimeUnit.HOURS.toSeconds(duplicateWindowHours + 1)),
+                Long.toString(hour + 1), Integer.toString(duplicateWindowHours));
+            return new Counts(result.get(0).intValue(), result.get(1).intValue());
+        } catch (Exception e) {
+            unavailableUntil = System.currentTimeMillis() + retryAfterMs;
+            fallbacks.increment();
+            logger.warn("Shared payment counters unavailable, counting locally for {} ms: {}", retryAfterMs, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Payments to the same IBAN before the current one.
+     */
+    public static final class Counts {
+        private final int paymentsInWindow;
+        private final int duplicatePayments;
+
+        public Counts(int paymentsInWindow, int duplicatePayments) {
+            this.paymentsInWindow = paymentsInWindow;
+            this.duplicatePayments = duplicatePayments;
+        }
+
+        public int getPaymentsInWindow() {
+            return paymentsInWindow;
+        }
+
+        public int getDuplicatePayments() {
+            return duplicatePayments;
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package com.microservices.gateway.service;
 
+import com.microservices.gateway.service.SqlInjectionScanner.Rule;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
+import java.util.EnumSet;
 import java.util.regex.Pattern;
 import java.util.List;
 import java.util.ArrayList;
@@ -14,63 +16,6 @@ import java.util.ArrayList;
 @Service
 public class SqlInjectionProtectionService {
 
-    // Common SQL injection patterns - More targeted and less aggressive
-    private static final Pattern[] SQL_INJECTION_PATTERNS = {
-        // UNION-based attacks
-        Pattern.compile("(?i).*union.*select.*", Pattern.CASE_INSENSITIVE),
-        
-        // Comment-based attacks
-        Pattern.compile("(?i).*(--|#|/\\*|\\*/).*", Pattern.CASE_INSENSITIVE),
-        
-        // Boolean-based blind SQL injection
-        Pattern.compile("(?i).*(or|and).*\\d+\\s*=\\s*\\d+.*", Pattern.CASE_INSENSITIVE),
-        
-        // Time-based blind SQL injection
-        Pattern.compile("(?i).*(sleep|waitfor|delay|benchmark).*", Pattern.CASE_INSENSITIVE),
-        
-        // Stacked queries (but allow single semicolon at end)
-        Pattern.compile("(?i).*;.*;.*", Pattern.CASE_INSENSITIVE),
-        
-        // Function-based attacks
-        Pattern.compile("(?i).*(load_file|into\\s+outfile|into\\s+dumpfile).*", Pattern.CASE_INSENSITIVE),
-        
-        // Information schema attacks
-        Pattern.compile("(?i).*information_schema.*", Pattern.CASE_INSENSITIVE),
-        
-        // System table attacks
-        Pattern.compile("(?i).*(sys\\.|pg_|mysql\\.).*", Pattern.CASE_INSENSITIVE),
-        
-        // Hex encoding attacks
-        Pattern.compile("(?i).*0x[0-9a-f]+.*", Pattern.CASE_INSENSITIVE),
-        
-        // Char function attacks
-        Pattern.compile("(?i).*char\\s*\\(.*", Pattern.CASE_INSENSITIVE),
-        
-        // ASCII function attacks
-        Pattern.compile("(?i).*ascii\\s*\\(.*", Pattern.CASE_INSENSITIVE),
-        
-        // Substring function attacks
-        Pattern.compile("(?i).*substring\\s*\\(.*", Pattern.CASE_INSENSITIVE),
-        
-        // Length function attacks
-        Pattern.compile("(?i).*length\\s*\\(.*", Pattern.CASE_INSENSITIVE),
-        
-        // Cast function attacks
-        Pattern.compile("(?i).*cast\\s*\\(.*", Pattern.CASE_INSENSITIVE),
-        
-        // Convert function attacks
-        Pattern.compile("(?i).*convert\\s*\\(.*", Pattern.CASE_INSENSITIVE),
-        
-        // SQL keywords in suspicious contexts
-        Pattern.compile("(?i).*(drop|create|alter|truncate|delete|insert|update).*table.*", Pattern.CASE_INSENSITIVE),
-        
-        // Script injection attempts
-        Pattern.compile("(?i).*<script.*>.*", Pattern.CASE_INSENSITIVE),
-        
-        // SQL injection with quotes
-        Pattern.compile("(?i).*'.*(or|and).*'.*", Pattern.CASE_INSENSITIVE)
-    };
-
     // Dangerous characters that should be escaped or rejected - More targeted
     private static final String[] DANGEROUS_CHARS = {
         "'", "\"", "--", "/*", "*/", "xp_", "sp_", "exec", "execute",
@@ -80,6 +25,23 @@ public class SqlInjectionProtectionService {
         "grant", "revoke", "deny", "backup", "restore", "shutdown"
     };
 
+    // Common SQL injection patterns, checked in the same pass as the dangerous characters
+    private static final SqlInjectionScanner SCANNER = new SqlInjectionScanner(EnumSet.of(
+        Rule.UNION_SELECT,          // UNION-based attacks
+        Rule.COMMENT,               // Comment-based attacks
+        Rule.BOOLEAN_COMPARISON,    // Boolean-based blind SQL injection
+        Rule.TIME_DELAY,            // Time-based blind SQL injection
+        Rule.STACKED_QUERIES,       // Stacked queries (but allow single semicolon at end)
+        Rule.FILE_FUNCTION,         // Function-based attacks
+        Rule.INFORMATION_SCHEMA,    // Information schema attacks
+        Rule.SYSTEM_TABLE,          // System table attacks
+        Rule.HEX_LITERAL,           // Hex encoding attacks
+        Rule.FUNCTION_CALL,         // char, ascii, substring, length, cast and convert calls
+        Rule.DDL_TABLE,             // SQL keywords in suspicious contexts
+        Rule.SCRIPT_TAG,            // Script injection attempts
+        Rule.QUOTED_OR_AND          // SQL injection with quotes
+    ), DANGEROUS_CHARS);
+
     // Maximum input length to prevent buffer overflow attacks
     private static final int MAX_INPUT_LENGTH = 1000;
 
@@ -98,22 +60,8 @@ public class SqlInjectionProtectionService {
             return false;
         }
 
-        // Check against SQL injection patterns
-        for (Pattern pattern : SQL_INJECTION_PATTERNS) {
-            if (pattern.matcher(input).matches()) {
-                return false;
-            }
-        }
-
-        // Check for dangerous characters
-        String lowerInput = input.toLowerCase();
-        for (String dangerousChar : DANGEROUS_CHARS) {
-            if (lowerInput.contains(dangerousChar.toLowerCase())) {
-                return false;
-            }
-        }
-
-        return true;
+        // Check against SQL injection patterns and dangerous characters, in one pass
+        return !SCANNER.isSuspicious(input);
     }
 
     /**
@@ -134,7 +82,7 @@ public class SqlInjectionProtectionService {
         }
 
         // Remove SQL injection patterns
-        for (Pattern pattern : SQL_INJECTION_PATTERNS) {
+        for (Pattern pattern : SCANNER.getPatterns()) {
             sanitized = pattern.matcher(sanitized).replaceAll("");
         }
 
@@ -0,0 +1,371 @@
+package com.microservices.gateway.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Checks input against the SQL injection rules in a single pass over its
+ * characters, allocating nothing. Keywords are found by an Aho-Corasick
+ * automaton; what a rule needs beyond a keyword (whitespace and an opening
+ * parenthesis after a function name, digits compared with '=', a keyword that
+ * must come after another) is tracked alongside as the characters go by.
+ *
+ * <p>Verdicts are those of matching each rule's regex against the whole input and
+ * of searching the lowercased input for each keyword, which is what this
+ * replaced. That includes a quirk of the regexes: {@code .} does not match line
+ * breaks, so input spanning lines only matches where a rule's own {@code \s}
+ * covers the breaks. Such input is rare, and the regexes are run on it instead.
+ */
+public final class SqlInjectionScanner {
+
+    /**
+     * The rules, each with the regexes it stands for.
+     */
+    public enum Rule {
+        UNION_SELECT("(?i).*union.*select.*"),
+        COMMENT("(?i).*(--|#|/\\*|\\*/).*"),
+        BOOLEAN_COMPARISON("(?i).*(or|and).*\\d+\\s*=\\s*\\d+.*"),
+        TIME_DELAY("(?i).*(sleep|waitfor|delay|benchmark).*"),
+        STACKED_QUERIES("(?i).*;.*;.*"),
+        SEMICOLON("(?i).*;.*"),
+        FILE_FUNCTION("(?i).*(load_file|into\\s+outfile|into\\s+dumpfile).*"),
+        INFORMATION_SCHEMA("(?i).*information_schema.*"),
+        SYSTEM_TABLE("(?i).*(sys\\.|pg_|mysql\\.).*"),
+        HEX_LITERAL("(?i).*0x[0-9a-f]+.*"),
+        FUNCTION_CALL("(?i).*char\\s*\\(.*", "(?i).*ascii\\s*\\(.*", "(?i).*substring\\s*\\(.*",
+            "(?i).*length\\s*\\(.*", "(?i).*cast\\s*\\(.*", "(?i).*convert\\s*\\(.*"),
+        DDL_TABLE("(?i).*(drop|create|alter|truncate|delete|insert|update).*table.*"),
+        SCRIPT_TAG("(?i).*<script.*>.*"),
+        QUOTED_OR_AND("(?i).*'.*(or|and).*'.*");
+
+        private final List<Pattern> patterns;
+
+        Rule(String... regexes) {
+            List<Pattern> compiled = new ArrayList<>();
+            for (String regex : regexes) {
+                compiled.add(Pattern.compile(regex));
+            }
+            this.patterns = Collections.unmodifiableList(compiled);
+        }
+
+        public List<Pattern> getPatterns() {
+            return patterns;
+        }
+    }
+
+    // What the keyword automaton reports
+    private static final int UNION = 1;
+    private static final int SELECT = 1 << 1;
+    private static final int COMMENT = 1 << 2;
+    private static final int OR_AND = 1 << 3;
+    private static final int TIME_DELAY = 1 << 4;
+    private static final int LOAD_FILE = 1 << 5;
+    private static final int INTO = 1 << 6;
+    private static final int OUTFILE = 1 << 7;
+    private static final int DUMPFILE = 1 << 8;
+    private static final int INFORMATION_SCHEMA = 1 << 9;
+    private static final int SYSTEM_TABLE = 1 << 10;
+    private static final int HEX_PREFIX = 1 << 11;
+    private static final int FUNCTION = 1 << 12;
+    private static final int DDL = 1 << 13;
+    private static final int TABLE = 1 << 14;
+    private static final int SCRIPT = 1 << 15;
+
+    private static final Automaton RULE_KEYWORDS = new Automaton(
+        new String[] {
+            "union", "select", "--", "#", "/*", "*/", "or", "and",
+            "sleep", "waitfor", "delay", "benchmark", "load_file", "into", "outfile", "dumpfile",
+            "information_schema", "sys.", "pg_", "mysql.", "0x",
+            "char", "ascii", "substring", "length", "cast", "convert",
+            "drop", "create", "alter", "truncate", "delete", "insert", "update", "table", "<script"
+        },
+        new int[] {
+            UNION, SELECT, COMMENT, COMMENT, COMMENT, COMMENT, OR_AND, OR_AND,
+            TIME_DELAY, TIME_DELAY, TIME_DELAY, TIME_DELAY, LOAD_FILE, INTO, OUTFILE, DUMPFILE,
+            INFORMATION_SCHEMA, SYSTEM_TABLE, SYSTEM_TABLE, SYSTEM_TABLE, HEX_PREFIX,
+            FUNCTION, FUNCTION, FUNCTION, FUNCTION, FUNCTION, FUNCTION,
+            DDL, DDL, DDL, DDL, DDL, DDL, DDL, TABLE, SCRIPT
+        });
+
+    // Characters String.toLowerCase turns into ASCII letters, besides A-Z
+    private static final char KELVIN_SIGN = '\u212A';
+    private static final char CAPITAL_I_WITH_DOT = '\u0130';
+
+    private static final int NONE = Integer.MAX_VALUE;
+
+    private final int rules;
+    private final List<Pattern> patterns;
+    private final Automaton keywords;
+
+    /**
+     * @param rules the rules to apply
+     * @param keywords flagged wherever they occur, ignoring case; ASCII only
+     */
+    public SqlInjectionScanner(Set<Rule> rules, String... keywords) {
+        int mask = 0;
+        List<Pattern> compiled = new ArrayList<>();
+        for (Rule rule : EnumSet.copyOf(rules)) {
+            mask |= 1 << rule.ordinal();
+            compiled.addAll(rule.getPatterns());
+        }
+        this.rules = mask;
+        this.patterns = Collections.unmodifiableList(compiled);
+        int[] found = new int[keywords.length];
+        Arrays.fill(found, 1);
+        this.keywords = keywords.length > 0 ? new Automaton(keywords, found) : null;
+    }
+
+    /**
+     * The regexes of the rules applied, in rule order.
+     */
+    public List<Pattern> getPatterns() {
+        return patterns;
+    }
+
+    /**
+     * @return true if any rule matches or any keyword occurs
+     */
+    public boolean isSuspicious(CharSequence input) {
+        int length = input.length();
+        int ruleState = 0;
+        int keywordState = 0;
+        int matched = 0;
+        boolean lineBreak = false;
+        int semicolons = 0;
+
+        int unionEnd = NONE;        // end of the first "union"
+        int ddlEnd = NONE;          // end of the first DDL verb
+        int intoEnd = -2;           // end of the last "into"
+        int intoGapEnd = -1;        // where the whitespace after it ends
+        boolean inIntoGap = false;
+        boolean functionOpen = false;
+        boolean hexOpen = false;
+        boolean scriptOpen = false;
+        boolean orAnd = false;
+        boolean quote = false;
+        boolean quotedOrAnd = false;
+        int comparison = 0;         // 1 digits, 2 digits and whitespace, 3 after '='
+
+        for (int i = 0; i < length; i++) {
+            char c = input.charAt(i);
+
+            if (keywords != null) {
+                if (c < 128) {
+                    keywordState = keywords.step(keywordState, c);
+                } else if (c == KELVIN_SIGN) {
+                    keywordState = keywords.step(keywordState, 'k');
+                } else if (c == CAPITAL_I_WITH_DOT) {
+                    // Lowercases to 'i' and a combining dot
+                    if (keywords.output(keywords.step(keywordState, 'i')) != 0) {
+                        return true;
+                    }
+                    keywordState = 0;
+                } else {
+                    keywordState = 0;
+                }
+                if (keywords.output(keywordState) != 0) {
+                    return true;
+                }
+            }
+
+            boolean space = c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+            boolean digit = c >= '0' && c <= '9';
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                lineBreak = true;
+            }
+
+            if (functionOpen && c == '(') {
+                matched |= 1 << Rule.FUNCTION_CALL.ordinal();
+            } else if (!space) {
+                functionOpen = false;
+            }
+            if (hexOpen && (digit || (c | 0x20) >= 'a' && (c | 0x20) <= 'f')) {
+                matched |= 1 << Rule.HEX_LITERAL.ordinal();
+            }
+            hexOpen = false;
+            inIntoGap = space && (inIntoGap || intoEnd == i - 1);
+            if (inIntoGap) {
+                intoGapEnd = i + 1;
+            }
+            if (orAnd) {
+                if (digit) {
+                    if (comparison == 3) {
+                        matched |= 1 << Rule.BOOLEAN_COMPARISON.ordinal();
+                    }
+                    comparison = comparison == 3 ? 0 : 1;
+                } else if (space) {
+                    comparison = comparison == 1 ? 2 : comparison;
+                } else {
+                    comparison = c == '=' && (comparison == 1 || comparison == 2) ? 3 : 0;
+                }
+            }
+            if (c == ';') {
+                semicolons++;
+            } else if (c == '>' && scriptOpen) {
+                matched |= 1 << Rule.SCRIPT_TAG.ordinal();
+            } else if (c == '\'') {
+                if (quotedOrAnd) {
+                    matched |= 1 << Rule.QUOTED_OR_AND.ordinal();
+                }
+                quote = true;
+            }
+
+            ruleState = c < 128 ? RULE_KEYWORDS.step(ruleState, c) : 0;
+            int found = RULE_KEYWORDS.output(ruleState);
+            if (found == 0) {
+                continue;
+            }
+            if ((found & UNION) != 0) {
+                unionEnd = Math.min(unionEnd, i);
+            }
+            if ((found & SELECT) != 0 && unionEnd <= i - "select".length()) {
+                matched |= 1 << Rule.UNION_SELECT.ordinal();
+            }
+            if ((found & COMMENT) != 0) {
+                matched |= 1 << Rule.COMMENT.ordinal();
+            }
+            if ((found & OR_AND) != 0) {
+                orAnd = true;
+                quotedOrAnd |= quote;
+            }
+            if ((found & TIME_DELAY) != 0) {
+                matched |= 1 << Rule.TIME_DELAY.ordinal();
+            }
+            if ((found & LOAD_FILE) != 0
+                    || (found & OUTFILE) != 0 && intoGapEnd == i + 1 - "outfile".length()
+                    || (found & DUMPFILE) != 0 && intoGapEnd == i + 1 - "dumpfile".length()) {
+                matched |= 1 << Rule.FILE_FUNCTION.ordinal();
+            }
+            if ((found & INTO) != 0) {
+                intoEnd = i;
+            }
+            if ((found & INFORMATION_SCHEMA) != 0) {
+                matched |= 1 << Rule.INFORMATION_SCHEMA.ordinal();
+            }
+            if ((found & SYSTEM_TABLE) != 0) {
+                matched |= 1 << Rule.SYSTEM_TABLE.ordinal();
+            }
+            hexOpen = (found & HEX_PREFIX) != 0;
+            functionOpen |= (found & FUNCTION) != 0;
+            if ((found & DDL) != 0) {
+                ddlEnd = Math.min(ddlEnd, i);
+            }
+            if ((found & TABLE) != 0 && ddlEnd <= i - "table".length()) {
+                matched |= 1 << Rule.DDL_TABLE.ordinal();
+            }
+            scriptOpen |= (found & SCRIPT) != 0;
+        }
+
+        if (lineBreak) {
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(input).matches()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (semicolons >= 2) {
+            matched |= 1 << Rule.STACKED_QUERIES.ordinal();
+        }
+        if (semicolons >= 1) {
+            matched |= 1 << Rule.SEMICOLON.ordinal();
+        }
+        return (matched & rules) != 0;
+    }
+
+    /**
+     * Aho-Corasick automaton over ASCII literals, ignoring case, compiled to a
+     * full transition table so each character costs one array read. Characters
+     * are first mapped to classes, one per letter used in the literals and one for
+     * everything else, which keeps the table small.
+     */
+    private static final class Automaton {
+        private final byte[] classes = new byte[128];
+        private final int width;
+        private final int[] next;
+        // Bits of the literals ending in each state, suffixes included
+        private final int[] output;
+
+        Automaton(String[] literals, int[] bits) {
+            int classCount = 1;
+            int size = 1;
+            for (String literal : literals) {
+                for (int j = 0; j < literal.length(); j++) {
+                    char c = literal.charAt(j);
+                    if (c >= 128) {
+                        throw new IllegalArgumentException("Only ASCII keywords are supported: " + literal);
+                    }
+                    char lower = Character.toLowerCase(c);
+                    if (classes[lower] == 0) {
+                        classes[lower] = (byte) classCount;
+                        classes[Character.toUpperCase(lower)] = (byte) classCount;
+                        classCount++;
+                    }
+                }
+                size += literal.length();
+            }
+            this.width = classCount;
+
+            // Trie first; 0 marks a missing edge, as nothing leads back to the root
+            int[] trie = new int[size * width];
+            int[] out = new int[size];
+            int states = 1;
+            for (int l = 0; l < literals.length; l++) {
+                int state = 0;
+                for (int j = 0; j < literals[l].length(); j++) {
+                    int edge = state * width + classes[literals[l].charAt(j)];
+                    if (trie[edge] == 0) {
+                        trie[edge] = states++;
+                    }
+                    state = trie[edge];
+                }
+                out[state] |= bits[l];
+            }
+
+            // Breadth first, so a state's failure link is complete before the state
+            this.next = new int[states * width];
+            this.output = new int[states];
+            int[] fail = new int[states];
+            int[] queue = new int[states];
+            int head = 0;
+            int tail = 0;
+            for (int c = 0; c < width; c++) {
+                next[c] = trie[c];
+                if (trie[c] != 0) {
+                    queue[tail++] = trie[c];
+                }
+            }
+            while (head < tail) {
+                int state = queue[head++];
+                output[state] = out[state] | output[fail[state]];
+                for (int c = 0; c < width; c++) {
+                    int target = trie[state * width + c];
+                    int fallback = next[fail[state] * width + c];
+                    if (target != 0) {
+                        fail[target] = fallback;
+                        next[state * width + c] = target;
+                        queue[tail++] = target;
+                    } else {
+                        next[state * width + c] = fallback;
+                    }
+                }
+            }
+        }
+
+        /**
+         * @param c an ASCII character
+         */
+        int step(int state, char c) {
+            return next[state * width + classes[c]];
+        }
+
+        int output(int state) {
+            return output[state];
+        }
+    }
+}
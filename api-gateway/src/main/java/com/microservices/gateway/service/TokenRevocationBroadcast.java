@@ -0,0 +1,129 @@
+package com.microservices.gateway.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tells the other gateway instances about a revocation through a Redis pub/sub
+ * channel, so they stop honouring the token within milliseconds instead of at
+ * their next {@link TokenRevocationList} poll. Each instance applies what it
+ * receives, its own messages included, to its revocation list; validation itself
+ * never touches Redis. Pub/sub delivers at most once, so an instance that misses
+ * a message (disconnected, restarting) still catches up through the poll.
+ */
+@Component
+public class TokenRevocationBroadcast {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenRevocationBroadcast.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final TokenRevocationList revocationList;
+    private final boolean enabled;
+    private final String channel;
+    private final RedisMessageListenerContainer container;
+    private final Counter published;
+    private final Counter received;
+
+    public TokenRevocationBroadcast(StringRedisTemplate redisTemplate,
+                                    RedisConnectionFactory connectionFactory,
+                                    TokenRevocationList revocationList,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${jwt.revocation.broadcast.enabled:true}") boolean enabled,
+                                    @Value("${jwt.revocation.broadcast.channel:jwt:revocations}") String channel) {
+        this.redisTemplate = redisTemplate;
+        this.revocationList = revocationList;
+        this.enabled = enabled;
+        this.channel = channel;
+        this.container = new RedisMessageListenerContainer();
+        this.container.setConnectionFactory(connectionFactory);
+        this.container.addMessageListener(this::onMessage, new ChannelTopic(channel));
+
+        this.published = Counter.builder("jwt.revocations.broadcast")
+            .tag("direction", "published")
+            .description("Token revocations sent to or received from other instances")
+            .register(meterRegistry);
+        this.received = Counter.builder("jwt.revocations.broadcast")
+            .tag("direction", "received")
+            .description("Token revocations sent to or received from other instances")
+            .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            container.afterPropertiesSet();
+            subscribe();
+        }
+    }
+
+    /**
+     * Once subscribed the container recovers from lost connections itself, but
+     * not from Redis being down when it first subscribes.
+     */
+    @Scheduled(initialDelayString = "${jwt.revocation.refresh-interval-ms:5000}",
+               fixedDelayString = "${jwt.revocation.refresh-interval-ms:5000}")
+    public void subscribe() {
+        if (!enabled || container.isListening()) {
+            return;
+        }
+        try {
+            container.start();
+            logger.info("Subscribed to token revocations on {}", channel);
+        } catch (Exception e) {
+            container.stop();
+            logger.warn("Failed to subscribe to token revocations on {}, relying on polling: {}", channel, e.getMessage());
+        }
+    }
+
+    /**
+     * Sends the revocation to every instance. Never throws: if Redis is down the
+     * other instances pick it up from the database.
+     */
+    public void publish(String fingerprint, long expiresAtMillis) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            redisTemplate.convertAndSend(channel, fingerprint + ":" + expiresAtMillis);
+            published.increment();
+        } catch (Exception e) {
+            logger.warn("Failed to broadcast token revocation, other instances will poll for it: {}", e.getMessage());
+        }
+    }
+
+    private void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.indexOf(':');
+        try {
+            revocationList.revoke(body.substring(0, separator), Long.parseLong(body.substring(separator + 1)));
+            received.increment();
+        } catch (RuntimeException e) {
+            logger.warn("Ignoring malformed token revocation message: {}", body);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (enabled) {
+            try {
+                container.destroy();
+            } catch (Exception e) {
+                logger.debug("Failed to stop token revocation listener: {}", e.getMessage());
+            }
+        }
+    }
+}
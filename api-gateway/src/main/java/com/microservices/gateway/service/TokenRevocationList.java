@@ -0,0 +1,174 @@
+package com.microservices.gateway.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The revoked, not yet expired tokens, held in memory so a revocation check is a
+ * hash lookup. Tokens are keyed by the first 64 bits of their fingerprint (see
+ * {@link JwtService#fingerprint(String)}); a false match between two live tokens
+ * is as likely as guessing a 64-bit key.
+ *
+ * <p>Loaded from jwt_tokens once the application is up and then polled for rows
+ * revoked since, so revocations made by other instances arrive within the refresh
+ * interval at the latest ({@link TokenRevocationBroadcast} usually brings them
+ * sooner). Until the first load succeeds the list is not ready and callers fall
+ * back to checking each token in Redis and the database.
+ *
+ * <p>Also holds the ids of deactivated users, so their tokens stop working even
+ * when the account was switched off in the database directly. They are loaded in
+ * full once and then polled by users.updated_at (kept current by a trigger, see
+ * V15), so a poll only reads the users changed since the last one.
+ */
+@Component
+public class TokenRevocationList {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenRevocationList.class);
+
+    // How far back each poll looks again, for rows committed late or stamped by a slower clock
+    private static final long POLL_OVERLAP_SECONDS = 60;
+
+    private static final String FINGERPRINT_PATTERN = "^[0-9a-f]{64}$";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final VerifiedTokenCache tokenCache;
+    // fingerprint prefix -> expiry, epoch millis
+    private final Map<Long, Long> revoked = new ConcurrentHashMap<>();
+    private final Set<UUID> inactiveUsers = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean ready;
+    private volatile LocalDateTime revokedThrough;
+    // Latest users.updated_at seen, on the database clock
+    private volatile LocalDateTime usersChangedThrough;
+
+    public TokenRevocationList(JdbcTemplate jdbcTemplate, VerifiedTokenCache tokenCache, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.tokenCache = tokenCache;
+        Gauge.builder("jwt.revocations", revoked, Map::size)
+            .description("Revoked, unexpired tokens held in memory")
+            .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            jdbcTemplate.query("""
+                SELECT token_hash, expires_at, revoked_at FROM jwt_tokens
+                WHERE is_revoked AND expires_at > ? AND token_hash ~ ?
+                """,
+                rs -> { add(rs.getString(1), rs.getTimestamp(2), rs.getTimestamp(3)); },
+                now, FINGERPRINT_PATTERN);
+            if (revokedThrough == null) {
+                revokedThrough = now;
+            }
+            if (usersChangedThrough == null) {
+                loadInactiveUsers();
+            }
+            ready = true;
+            logger.info("Token revocation list loaded with {} revoked tokens", revoked.size());
+        } catch (Exception e) {
+            logger.warn("Failed to load token revocation list, checking tokens against the database: {}", e.getMessage());
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public boolean isRevoked(String fingerprint) {
+        Long expiresAt = revoked.get(key(fingerprint));
+        return expiresAt != null && expiresAt > System.currentTimeMillis();
+    }
+
+    public boolean isUserInactive(UUID userId) {
+        return inactiveUsers.contains(userId);
+    }
+
+    public void revoke(String fingerprint, long expiresAtMillis) {
+        revoked.merge(key(fingerprint), expiresAtMillis, Math::max);
+        tokenCache.invalidate(fingerprint);
+    }
+
+    /**
+     * Picks up tokens revoked and users deactivated elsewhere, and forgets the expired tokens.
+     */
+    @Scheduled(fixedDelayString = "${jwt.revocation.refresh-interval-ms:5000}")
+    public void refresh() {
+        if (!ready) {
+            load();
+            return;
+        }
+        try {
+            jdbcTemplate.query("""
+                SELECT token_hash, expires_at, revoked_at FROM jwt_tokens
+                WHERE is_revoked AND revoked_at > ? AND token_hash ~ ?
+                """,
+                rs -> { add(rs.getString(1), rs.getTimestamp(2), rs.getTimestamp(3)); },
+                Timestamp.valueOf(revokedThrough.minusSeconds(POLL_OVERLAP_SECONDS)), FINGERPRINT_PATTERN);
+            refreshInactiveUsers();
+        } catch (Exception e) {
+            logger.warn("Failed to refresh token revocation list: {}", e.getMessage());
+        }
+        long now = System.currentTimeMillis();
+        revoked.values().removeIf(expiresAt -> expiresAt <= now);
+    }
+
+    public int size() {
+        return revoked.size();
+    }
+
+    private void loadInactiveUsers() {
+        // Read the watermark first, so a user changed during the load is picked up again
+        LocalDateTime through = jdbcTemplate.queryForObject("SELECT LOCALTIMESTAMP", LocalDateTime.class);
+        jdbcTemplate.query("SELECT id FROM users WHERE is_active = false",
+            rs -> { inactiveUsers.add(UUID.fromString(rs.getString(1))); });
+        usersChangedThrough = through;
+    }
+
+    private void refreshInactiveUsers() {
+        jdbcTemplate.query("SELECT id, is_active, updated_at FROM users WHERE updated_at > ?",
+            rs -> {
+                UUID userId = UUID.fromString(rs.getString(1));
+                if (rs.getBoolean(2)) {
+                    inactiveUsers.remove(userId);
+                } else {
+                    inactiveUsers.add(userId);
+                }
+                LocalDateTime at = rs.getTimestamp(3).toLocalDateTime();
+                if (at.isAfter(usersChangedThrough)) {
+                    usersChangedThrough = at;
+                }
+            },
+            Timestamp.valueOf(usersChangedThrough.minusSeconds(POLL_OVERLAP_SECONDS)));
+    }
+
+    private void add(String fingerprint, Timestamp expiresAt, Timestamp revokedAt) {
+        revoke(fingerprint, expiresAt.toLocalDateTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        if (revokedAt != null) {
+            LocalDateTime at = revokedAt.toLocalDateTime();
+            if (revokedThrough == null || at.isAfter(revokedThrough)) {
+                revokedThrough = at;
+            }
+        }
+    }
+
+    static long key(String fingerprint) {
+        return Long.parseUnsignedLong(fingerprint, 0, 16, 16);
+    }
+}
@@ -0,0 +1,284 @@
+package com.microservices.gateway.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sliding-window payment counts per supplier IBAN, replacing the COUNT(*) over
+ * fraud_analysis_log in the velocity check.
+ * Keys are 64-bit IBAN hashes in open-addressing tables, split into stripes that
+ * are locked independently; each key owns a ring buffer of per-minute buckets
+ * covering the window. Counts are seeded from the log at startup so decisions
+ * carry over restarts, and keys with no payment in the window are evicted.
+ */
+@Component
+public class VelocityCounters {
+
+    private static final Logger logger = LoggerFactory.getLogger(VelocityCounters.class);
+
+    private static final int STRIPES = 64;
+    private static final int INITIAL_STRIPE_CAPACITY = 64;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int windowMinutes;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    // Payments logged from here on are recorded live; earlier ones come from the seed
+    private final LocalDateTime recordingSince;
+
+    private volatile boolean ready;
+
+    public VelocityCounters(JdbcTemplate jdbcTemplate,
+                            MeterRegistry meterRegistry,
+                            @Value("${velocity.enabled:true}") boolean enabled,
+                            @Value("${velocity.window-minutes:60}") int windowMinutes) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.windowMinutes = windowMinutes;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(INITIAL_STRIPE_CAPACITY, windowMinutes);
+        }
+        this.recordingSince = LocalDateTime.now();
+        Gauge.builder("velocity.counters.keys", this, VelocityCounters::size)
+            .description("IBANs with payments inside the velocity window")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Seeds the counters with the payments logged inside the window before startup.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void seed() {
+        if (!enabled) {
+            logger.info("Velocity counters disabled, velocity checks will query the database");
+            return;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            int[] rows = {0};
+            jdbcTemplate.query("""
+                SELECT supplier_iban, date_trunc('minute', created_at) AS minute, COUNT(*) AS payments
+                FROM fraud_analysis_log
+                WHERE created_at > ? AND created_at < ?
+                GROUP BY supplier_iban, date_trunc('minute', created_at)
+                """,
+                rs -> {
+                    String iban = rs.getString(1);
+                    if (iban != null) {
+                        add(iban, epochMinute(rs.getTimestamp(2)), rs.getInt(3));
+                        rows[0]++;
+                    }
+                },
+                Timestamp.valueOf(recordingSince.minusMinutes(windowMinutes)), Timestamp.valueOf(recordingSince));
+            ready = true;
+            logger.info("Velocity counters seeded with {} IBAN minutes in {} ms", rows[0], System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            logger.warn("Failed to seed velocity counters, velocity checks will query the database: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return true once seeded; until then counts would miss earlier payments
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int getWindowMinutes() {
+        return windowMinutes;
+    }
+
+    /**
+     * Records a logged payment.
+     */
+    public void record(String iban) {
+        if (enabled && iban != null) {
+            add(iban, currentMinute(), 1);
+        }
+    }
+
+    /**
+     * @return payments recorded for the IBAN within the window, counted in whole minutes
+     */
+    public int count(String iban) {
+        if (iban == null) {
+            return 0;
+        }
+        long key = Fingerprints.ofIban(iban);
+        return stripeFor(key).count(key, currentMinute());
+    }
+
+    /**
+     * @return number of IBANs currently tracked
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    @Scheduled(fixedDelayString = "${velocity.eviction-interval-ms:60000}")
+    public void evictIdle() {
+        long minute = currentMinute();
+        int evicted = 0;
+        for (Stripe stripe : stripes) {
+            evicted += stripe.evictIdle(minute);
+        }
+        if (evicted > 0) {
+            logger.debug("Evicted {} idle IBANs from velocity counters", evicted);
+        }
+    }
+
+    private void add(String iban, long minute, int payments) {
+        long key = Fingerprints.ofIban(iban);
+        stripeFor(key).add(key, minute, payments);
+    }
+
+    private Stripe stripeFor(long key) {
+        return stripes[(int) (key >>> 58) & (STRIPES - 1)];
+    }
+
+    private static long currentMinute() {
+        return TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis());
+    }
+
+    // created_at is written from LocalDateTime.now(), so read it back in the same zone
+    private static long epochMinute(Timestamp timestamp) {
+        return TimeUnit.SECONDS.toMinutes(timestamp.toLocalDateTime().atZone(ZoneId.systemDefault()).toEpochSecond());
+    }
+
+    /**
+     * One lock's worth of keys: linear-probing table of IBAN hashes, the newest
+     * minute seen per key, and window-sized rings of per-minute counts.
+     */
+    static final class Stripe {
+        private final int window;
+        private long[] keys;
+        private long[] lastMinutes;
+        private int[] buckets;
+        private int size;
+
+        Stripe(int capacity, int window) {
+            this.window = window;
+            allocate(capacity);
+        }
+
+        synchronized void add(long key, long minute, int payments) {
+            if ((size + 1) * 4 > keys.length * 3) {
+                rehash(keys.length * 2, Long.MIN_VALUE);
+            }
+            int slot = slotFor(key);
+            if (keys[slot] == 0) {
+                keys[slot] = key;
+                lastMinutes[slot] = minute;
+                size++;
+            }
+            long last = lastMinutes[slot];
+            int base = slot * window;
+            if (minute > last) {
+                // Clear the buckets of the minutes skipped since the last payment
+                long cleared = Math.min(minute - last, window);
+                for (long m = minute - cleared + 1; m <= minute; m++) {
+                    buckets[base + Math.floorMod(m, window)] = 0;
+                }
+                lastMinutes[slot] = minute;
+            } else if (minute <= last - window) {
+                return;
+            }
+            buckets[base + Math.floorMod(minute, window)] += payments;
+        }
+
+        synchronized int count(long key, long now) {
+            int slot = find(key);
+            if (slot < 0) {
+                return 0;
+            }
+            long last = lastMinutes[slot];
+            long from = Math.max(now - window + 1, last - window + 1);
+            int base = slot * window;
+            int total = 0;
+            for (long m = from; m <= last; m++) {
+                total += buckets[base + Math.floorMod(m, window)];
+            }
+            return total;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized int evictIdle(long now) {
+            int before = size;
+            rehash(keys.length, now - window);
+            return before - size;
+        }
+
+        private int find(long key) {
+            int mask = keys.length - 1;
+            for (int slot = (int) key & mask; ; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return slot;
+                }
+                if (keys[slot] == 0) {
+                    return -1;
+                }
+            }
+        }
+
+        private int slotFor(long key) {
+            int mask = keys.length - 1;
+            int slot = (int) key & mask;
+            while (keys[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * Rebuilds the table at the given capacity, dropping keys whose last
+         * payment is at or before idleBefore.
+         */
+        private void rehash(int capacity, long idleBefore) {
+            long[] oldKeys = keys;
+            long[] oldLastMinutes = lastMinutes;
+            int[] oldBuckets = buckets;
+            // Shrink back once most keys have gone idle
+            while (capacity > INITIAL_STRIPE_CAPACITY && size * 8 < capacity) {
+                capacity /= 2;
+            }
+            allocate(capacity);
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == 0 || oldLastMinutes[i] <= idleBefore) {
+                    continue;
+                }
+                int slot = slotFor(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                lastMinutes[slot] = oldLastMinutes[i];
+                System.arraycopy(oldBuckets, i * window, buckets, slot * window, window);
+                size++;
+            }
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            lastMinutes = new long[capacity];
+            buckets = new int[capacity * window];
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.microservices.gateway.service;
+
+import com.microservices.gateway.security.VerifiedToken;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tokens already verified, keyed by fingerprint and held until they expire, so a
+ * client repeating a token skips the signature check. Bounded: each stripe keeps
+ * its entries in access order and, when full, admits a new token only if it has
+ * been seen more often than the least recently used one (counted in a small
+ * frequency sketch, TinyLFU style), so a burst of one-off tokens cannot push out
+ * the clients that keep calling. Revocation removes the entry at once (see
+ * {@link TokenRevocationList#revoke}).
+ */
+@Component
+public class VerifiedTokenCache {
+
+    private static final int STRIPES = 16;
+
+    private final boolean enabled;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final Counter hits;
+    private final Counter misses;
+
+    public VerifiedTokenCache(MeterRegistry meterRegistry,
+                              @Value("${jwt.cache.enabled:true}") boolean enabled,
+                              @Value("${jwt.cache.max-size:10000}") int maxSize) {
+        this.enabled = enabled && maxSize > 0;
+        int perStripe = Math.max(1, maxSize / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(perStripe);
+        }
+        Gauge.builder("jwt.cache.size", this, VerifiedTokenCache::size)
+            .description("Verified tokens held in memory")
+            .register(meterRegistry);
+        this.hits = Counter.builder("jwt.cache.requests")
+            .tag("result", "hit")
+            .description("Token verifications looked up in the cache")
+            .register(meterRegistry);
+        this.misses = Counter.builder("jwt.cache.requests")
+            .tag("result", "miss")
+            .description("Token verifications looked up in the cache")
+            .register(meterRegistry);
+    }
+
+    /**
+     * @return the verified token, or null if it is not cached or has expired
+     */
+    public VerifiedToken get(String fingerprint, String token) {
+        if (!enabled) {
+            return null;
+        }
+        long key = TokenRevocationList.key(fingerprint);
+        VerifiedToken verified = stripeFor(key).get(key, token, System.currentTimeMillis());
+        if (verified != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return verified;
+    }
+
+    public void put(VerifiedToken verified) {
+        if (enabled) {
+            long key = TokenRevocationList.key(verified.getFingerprint());
+            stripeFor(key).put(key, verified, System.currentTimeMillis());
+        }
+    }
+
+    public void invalidate(String fingerprint) {
+        long key = TokenRevocationList.key(fingerprint);
+        stripeFor(key).remove(key);
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.cache.sweep-interval-ms:60000}")
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        for (Stripe stripe : stripes) {
+            stripe.evictExpired(now);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    private Stripe stripeFor(long key) {
+        return stripes[(int) (Fingerprints.mix(key) >>> 60)];
+    }
+
+    static final class Stripe {
+        private final int capacity;
+        // Access order: the first entry is the least recently used
+        private final LinkedHashMap<Long, VerifiedToken> entries;
+        private final FrequencySketch sketch;
+
+        Stripe(int capacity) {
+            this.capacity = capacity;
+            this.entries = new LinkedHashMap<>(capacity * 4 / 3 + 1, 0.75f, true);
+            this.sketch = new FrequencySketch(capacity);
+        }
+
+        synchronized VerifiedToken get(long key, String token, long now) {
+            sketch.increment(key);
+            VerifiedToken verified = entries.get(key);
+            if (verified == null) {
+                return null;
+            }
+            if (verified.getExpiresAt().getTime() <= now || !verified.getToken().equals(token)) {
+                entries.remove(key);
+                return null;
+            }
+            return verified;
+        }
+
+        synchronized void put(long key, VerifiedToken verified, long now) {
+            if (entries.containsKey(key) || entries.size() < capacity) {
+                entries.put(key, verified);
+                return;
+            }
+            Map.Entry<Long, VerifiedToken> eldest = entries.entrySet().iterator().next();
+            boolean expired = eldest.getValue().getExpiresAt().getTime() <= now;
+            if (expired || sketch.frequency(key) > sketch.frequency(eldest.getKey())) {
+                entries.remove(eldest.getKey());
+                entries.put(key, verified);
+            }
+        }
+
+        synchronized void remove(long key) {
+            entries.remove(key);
+        }
+
+        synchronized void evictExpired(long now) {
+            Iterator<VerifiedToken> it = entries.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().getExpiresAt().getTime() <= now) {
+                    it.remove();
+                }
+            }
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Count-min sketch of recent lookups: four saturating counters per key, the
+     * estimate is the smallest. All counters are halved after ten lookups per
+     * entry so old popularity fades.
+     */
+    static final class FrequencySketch {
+        private static final int MAX_COUNT = 15;
+        private static final long[] SEEDS = {
+            0x9e3779b97f4a7c15L, 0xc2b2ae3d27d4eb4fL, 0x165667b19e3779f9L, 0xd6e8feb86659fd93L
+        };
+
+        private final byte[] counts;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            int width = Integer.highestOneBit(Math.max(16, capacity) * 2 - 1) * 2;
+            this.counts = new byte[width];
+            this.mask = width - 1;
+            this.sampleSize = Math.max(160, capacity * 10);
+        }
+
+        void increment(long key) {
+            boolean added = false;
+            for (long seed : SEEDS) {
+                int i = index(key, seed);
+                if (counts[i] < MAX_COUNT) {
+                    counts[i]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] >>= 1;
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(long key) {
+            int frequency = MAX_COUNT;
+            for (long seed : SEEDS) {
+                frequency = Math.min(frequency, counts[index(key, seed)]);
+            }
+            return frequency;
+        }
+
+        private int index(long key, long seed) {
+            return (int) Fingerprints.mix(key + seed) & mask;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.microservices.gateway.service.rules;
+
+import com.microservices.gateway.service.PaymentEvaluationContext;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+
+/**
+ * Amounts outside the normal thresholds.
+ */
+@Component
+@Order(2)
+public class AmountThresholdRule implements FraudRule {
+
+    private static final BigDecimal VERY_HIGH_AMOUNT = new BigDecimal("50000");
+    private static final BigDecimal VERY_LOW_AMOUNT = new BigDecimal("0.01");
+
+    @Override
+    public String getName() {
+        return "amount-threshold";
+    }
+
+    @Override
+    public CostClass getCostClass() {
+        return CostClass.CPU;
+    }
+
+    @Override
+    public boolean matches(PaymentEvaluationContext context) {
+        BigDecimal amount = context.getAmount();
+        return amount.compareTo(VERY_HIGH_AMOUNT) > 0 || amount.compareTo(VERY_LOW_AMOUNT) < 0;
+    }
+
+    @Override
+    public String getAnomaly() {
+        return "Suspicious amount detected";
+    }
+
+    @Override
+    public String getReason() {
+        return "Amount exceeds normal thresholds";
+    }
+}
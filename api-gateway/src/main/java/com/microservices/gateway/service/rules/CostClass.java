@@ -0,0 +1,13 @@
+package com.microservices.gateway.service.rules;
+
+/**
+ * What evaluating a {@link FraudRule} costs; the pipeline runs cheaper classes first.
+ */
+public enum CostClass {
+    /** Pure computation on the request or facts already resolved */
+    CPU,
+    /** In-memory or Redis lookups */
+    CACHE,
+    /** Database round-trips */
+    DB
+}
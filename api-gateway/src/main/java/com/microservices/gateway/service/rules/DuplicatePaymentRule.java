@@ -0,0 +1,54 @@
+package com.microservices.gateway.service.rules;
+
+import com.microservices.gateway.service.PaymentEvaluationContext;
+import com.microservices.gateway.service.PaymentFact;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+
+/**
+ * Same amount to the same IBAN within the last 24 hours.
+ */
+@Component
+@Order(4)
+public class DuplicatePaymentRule implements FraudRule {
+
+    private final boolean inMemory;
+
+    public DuplicatePaymentRule(@Value("${duplicates.enabled:true}") boolean inMemory) {
+        this.inMemory = inMemory;
+    }
+
+    @Override
+    public String getName() {
+        return "duplicate-payment";
+    }
+
+    @Override
+    public CostClass getCostClass() {
+        // Served by the fingerprint store unless it is disabled
+        return inMemory ? CostClass.CACHE : CostClass.DB;
+    }
+
+    @Override
+    public Set<PaymentFact> getRequiredFacts() {
+        return Set.of(PaymentFact.DUPLICATE_PAYMENTS_LAST_24_HOURS);
+    }
+
+    @Override
+    public boolean matches(PaymentEvaluationContext context) {
+        return context.getDuplicatePaymentsLast24Hours() > 0;
+    }
+
+    @Override
+    public String getAnomaly() {
+        return "Potential duplicate payment detected";
+    }
+
+    @Override
+    public String getReason() {
+        return "Duplicate payment pattern detected";
+    }
+}
@@ -0,0 +1,40 @@
+package com.microservices.gateway.service.rules;
+
+import com.microservices.gateway.service.PaymentEvaluationContext;
+import com.microservices.gateway.service.PaymentFact;
+
+import java.util.Set;
+
+/**
+ * A single fraud check run by the {@link FraudRulePipeline}. Implementations are
+ * Spring beans; adding one is enough to have it evaluated. A matching rule adds its
+ * anomaly and moves an allowed payment to REVIEW, it never blocks.
+ */
+public interface FraudRule {
+
+    String getName();
+
+    CostClass getCostClass();
+
+    /**
+     * @return I/O-bound facts the rule reads, so they can be fetched concurrently beforehand
+     */
+    default Set<PaymentFact> getRequiredFacts() {
+        return Set.of();
+    }
+
+    /**
+     * @return true if the payment shows the anomaly this rule looks for
+     */
+    boolean matches(PaymentEvaluationContext context);
+
+    /**
+     * @return anomaly reported when the rule matches
+     */
+    String getAnomaly();
+
+    /**
+     * @return reason reported when this rule is what moves the payment to REVIEW
+     */
+    String getReason();
+}
@@ -0,0 +1,123 @@
+package com.microservices.gateway.service.rules;
+
+import com.microservices.gateway.service.PaymentEvaluationContext;
+import com.microservices.gateway.service.PaymentFact;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Runs the {@link FraudRule} beans cheapest first. Rules can only move a payment to
+ * REVIEW. Payments reach the pipeline only when their IBAN is neither GOOD nor
+ * BLOCK, which means they are already under review, so by default REVIEW does not
+ * settle the decision: the CACHE and DB rules (duplicates, velocity) still run and
+ * their anomalies tell the reviewer why the payment looks wrong. With
+ * fraud-rules.settle-on-review a payment under review counts as settled, and from
+ * then on CACHE and DB rules are skipped, while CPU rules still run because they
+ * cost nothing and keep the anomaly list informative.
+ * Before the rules of a CACHE or DB class run, the facts they need are fetched
+ * concurrently, so the class costs its slowest lookup rather than the sum.
+ */
+@Component
+public class FraudRulePipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(FraudRulePipeline.class);
+
+    private final List<FraudRule> rules;
+    private final boolean shortCircuit;
+    private final boolean settleOnReview;
+    private final Map<String, Counter> skippedCounters = new HashMap<>();
+
+    public FraudRulePipeline(List<FraudRule> rules,
+                             MeterRegistry meterRegistry,
+                             @Value("${fraud-rules.short-circuit:true}") boolean shortCircuit,
+                             @Value("${fraud-rules.settle-on-review:false}") boolean settleOnReview) {
+        // Stable sort keeps the @Order of rules within a cost class
+        List<FraudRule> ordered = new ArrayList<>(rules);
+        ordered.sort(Comparator.comparing(FraudRule::getCostClass));
+        this.rules = List.copyOf(ordered);
+        this.shortCircuit = shortCircuit;
+        this.settleOnReview = settleOnReview;
+        for (FraudRule rule : this.rules) {
+            skippedCounters.put(rule.getName(), Counter.builder("fraud.rules.skipped")
+                .description("Fraud rules not evaluated because the decision was already settled")
+                .tag("rule", rule.getName())
+                .register(meterRegistry));
+        }
+        logger.info("Fraud rule pipeline: {}", this.rules.stream()
+            .map(rule -> rule.getName() + "(" + rule.getCostClass() + ")").toList());
+    }
+
+    /**
+     * Evaluates the rules against a payment.
+     * @param context Facts about the payment
+     * @param underReview true if the payment is already under review
+     * @return the matching rules, in evaluation order
+     */
+    public List<FraudRule> evaluate(PaymentEvaluationContext context, boolean underReview) {
+        List<FraudRule> matched = new ArrayList<>();
+        // A matching rule puts the payment under review too
+        boolean settled = settleOnReview && underReview;
+        CostClass prefetched = CostClass.CPU;
+        for (FraudRule rule : rules) {
+            if (shortCircuit && settled && rule.getCostClass() != CostClass.CPU) {
+                skippedCounters.get(rule.getName()).increment();
+                logger.debug("Skipping fraud rule {}, decision already settled", rule.getName());
+                continue;
+            }
+            if (rule.getCostClass() != prefetched) {
+                prefetched = rule.getCostClass();
+                context.prefetch(getRequiredFacts(prefetched));
+            }
+            if (rule.matches(context)) {
+                matched.add(rule);
+                settled = settleOnReview;
+            }
+        }
+        return matched;
+    }
+
+    public List<FraudRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * @return true if {@link #evaluate} can skip rules; without settle-on-review no
+     * decision is ever settled, so every rule runs
+     */
+    public boolean isShortCircuit() {
+        return shortCircuit && settleOnReview;
+    }
+
+    /**
+     * @return facts needed by every rule
+     */
+    public Set<PaymentFact> getRequiredFacts() {
+        EnumSet<PaymentFact> facts = EnumSet.noneOf(PaymentFact.class);
+        for (FraudRule rule : rules) {
+            facts.addAll(rule.getRequiredFacts());
+        }
+        return facts;
+    }
+
+    private Set<PaymentFact> getRequiredFacts(CostClass costClass) {
+        EnumSet<PaymentFact> facts = EnumSet.noneOf(PaymentFact.class);
+        for (FraudRule rule : rules) {
+            if (rule.getCostClass() == costClass) {
+                facts.addAll(rule.getRequiredFacts());
+            }
+        }
+        return facts;
+    }
+}
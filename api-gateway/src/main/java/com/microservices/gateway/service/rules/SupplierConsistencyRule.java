@@ -0,0 +1,48 @@
+package com.microservices.gateway.service.rules;
+
+import com.microservices.gateway.service.PaymentEvaluationContext;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Generic or implausibly short supplier names.
+ */
+@Component
+@Order(3)
+public class SupplierConsistencyRule implements FraudRule {
+
+    @Override
+    public String getName() {
+        return "supplier-consistency";
+    }
+
+    @Override
+    public CostClass getCostClass() {
+        return CostClass.CPU;
+    }
+
+    @Override
+    public boolean matches(PaymentEvaluationContext context) {
+        // Check if supplier name contains suspicious patterns
+        String supplierName = context.getNormalizedSupplierName();
+        
+        // Check for generic names
+        if (supplierName.contains("test") || supplierName.contains("demo") || 
+            supplierName.contains("example") || supplierName.contains("fake")) {
+            return true;
+        }
+        
+        // Check for very short names
+        return supplierName.length() < 3;
+    }
+
+    @Override
+    public String getAnomaly() {
+        return "Supplier information inconsistency";
+    }
+
+    @Override
+    public String getReason() {
+        return "Supplier information requires verification";
+    }
+}
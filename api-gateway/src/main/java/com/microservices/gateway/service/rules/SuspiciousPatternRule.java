@@ -0,0 +1,80 @@
+package com.microservices.gateway.service.rules;
+
+import com.microservices.gateway.service.PaymentEvaluationContext;
+import com.microservices.gateway.service.PaymentFact;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Set;
+
+/**
+ * Amount patterns typical of test or fraudulent payments.
+ */
+@Component
+@Order(1)
+public class SuspiciousPatternRule implements FraudRule {
+
+    @Override
+    public String getName() {
+        return "suspicious-patterns";
+    }
+
+    @Override
+    public CostClass getCostClass() {
+        // The IBAN risk level is resolved before the rules run
+        return CostClass.CPU;
+    }
+
+    @Override
+    public Set<PaymentFact> getRequiredFacts() {
+        return Set.of(PaymentFact.IBAN_RISK_LEVEL);
+    }
+
+    @Override
+    public boolean matches(PaymentEvaluationContext context) {
+        BigDecimal amount = context.getAmount();
+
+        // Check for very small amounts (potential test)
+        if (amount.compareTo(BigDecimal.valueOf(1)) < 0) {
+            return true;
+        }
+        
+        // Check for very large amounts (potential fraud)
+        if (amount.compareTo(BigDecimal.valueOf(100000)) > 0) {
+            return true;
+        }
+        
+        // Check for amounts ending in .99 (common fraud pattern)
+        if (context.getAmountText().endsWith(".99")) {
+            return true;
+        }
+        
+        // Check for suspicious amount patterns (but not for GOOD IBANs)
+        // GOOD IBANs are expected to have rounded amounts, so don't flag them
+        String ibanRiskLevel = context.getIbanRiskLevel();
+        if (!"GOOD".equals(ibanRiskLevel)) {
+            // Check for round numbers (potential test payments) - only for non-GOOD IBANs
+            if (amount.remainder(BigDecimal.valueOf(1000)).compareTo(BigDecimal.ZERO) == 0) {
+                return true;
+            }
+            
+            // Check for suspicious amount patterns - only for non-GOOD IBANs
+            if (amount.remainder(BigDecimal.valueOf(100)).compareTo(BigDecimal.ZERO) == 0) {
+                return true; // Round hundreds
+            }
+        }
+        
+        return false;
+    }
+
+    @Override
+    public String getAnomaly() {
+        return "Suspicious payment pattern detected";
+    }
+
+    @Override
+    public String getReason() {
+        return "Suspicious payment pattern requires review";
+    }
+}
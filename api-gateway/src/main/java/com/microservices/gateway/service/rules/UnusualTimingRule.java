@@ -0,0 +1,43 @@
+package com.microservices.gateway.service.rules;
+
+import com.microservices.gateway.service.PaymentEvaluationContext;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+/**
+ * Payments made outside business hours.
+ */
+@Component
+@Order(5)
+public class UnusualTimingRule implements FraudRule {
+
+    @Override
+    public String getName() {
+        return "unusual-timing";
+    }
+
+    @Override
+    public CostClass getCostClass() {
+        return CostClass.CPU;
+    }
+
+    @Override
+    public boolean matches(PaymentEvaluationContext context) {
+        int hour = LocalDateTime.now().getHour();
+        
+        // Flag payments made between 11 PM and 6 AM
+        return hour >= 23 || hour <= 6;
+    }
+
+    @Override
+    public String getAnomaly() {
+        return "Unusual payment timing detected";
+    }
+
+    @Override
+    public String getReason() {
+        return "Payment timing requires review";
+    }
+}
@@ -0,0 +1,58 @@
+package com.microservices.gateway.service.rules;
+
+import com.microservices.gateway.service.PaymentEvaluationContext;
+import com.microservices.gateway.service.PaymentFact;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+
+/**
+ * More than velocity.threshold payments (3 by default) to the same IBAN within
+ * the velocity window (an hour by default).
+ */
+@Component
+@Order(6)
+public class VelocityRule implements FraudRule {
+
+    private final int threshold;
+    private final boolean inMemory;
+
+    public VelocityRule(@Value("${velocity.threshold:3}") int threshold,
+                        @Value("${velocity.enabled:true}") boolean inMemory) {
+        this.threshold = threshold;
+        this.inMemory = inMemory;
+    }
+
+    @Override
+    public String getName() {
+        return "velocity";
+    }
+
+    @Override
+    public CostClass getCostClass() {
+        // Served by the in-memory counters unless they are disabled
+        return inMemory ? CostClass.CACHE : CostClass.DB;
+    }
+
+    @Override
+    public Set<PaymentFact> getRequiredFacts() {
+        return Set.of(PaymentFact.PAYMENTS_LAST_HOUR);
+    }
+
+    @Override
+    public boolean matches(PaymentEvaluationContext context) {
+        return context.getPaymentsLastHour() > threshold;
+    }
+
+    @Override
+    public String getAnomaly() {
+        return "High-frequency payment pattern detected";
+    }
+
+    @Override
+    public String getReason() {
+        return "High payment velocity detected";
+    }
+}
@@ -0,0 +1,158 @@
+package com.microservices.gateway.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IbanRiskIndexTest {
+
+    private static final String ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    // IBANs are at most 34 characters long
+    private static final String MAX_LENGTH_IBAN = "LC55HEMM000100010012001200023015XZ";
+
+    @Test
+    void encodesEveryAlphabetCharInAscendingOrder() {
+        int previous = 0;
+        for (char c : ALPHABET.toCharArray()) {
+            int code = IbanRiskIndex.encodeChar(c);
+            assertTrue(code > previous, "code of " + c);
+            assertTrue(code < 1 << IbanRiskIndex.BITS_PER_CHAR, "code of " + c);
+            previous = code;
+        }
+        assertEquals(-1, IbanRiskIndex.encodeChar('a'));
+        assertEquals(-1, IbanRiskIndex.encodeChar(' '));
+        assertEquals(-1, IbanRiskIndex.encodeChar('-'));
+    }
+
+    @Test
+    void packsMaxLengthIban() {
+        assertEquals(34, MAX_LENGTH_IBAN.length());
+        long[] words = new long[IbanRiskIndex.wordsFor(MAX_LENGTH_IBAN.length())];
+        assertEquals(4, words.length);
+        assertTrue(IbanRiskIndex.pack(MAX_LENGTH_IBAN, words));
+
+        long[] tooFew = new long[3];
+        assertFalse(IbanRiskIndex.pack(MAX_LENGTH_IBAN, tooFew));
+    }
+
+    @Test
+    void rejectsCharactersOutsideTheAlphabet() {
+        long[] words = new long[3];
+        assertFalse(IbanRiskIndex.pack("de89370400440532013000", words));
+        assertFalse(IbanRiskIndex.pack("DE89 3704 0044 0532 0130 00", words));
+    }
+
+    @Test
+    void packedWordsSortLikeTheStrings() {
+        Random random = new Random(7);
+        List<String> ibans = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            ibans.add(randomIban(random));
+        }
+        ibans.add(MAX_LENGTH_IBAN);
+        ibans.add("0");
+        ibans.add("ZZ");
+        int words = IbanRiskIndex.wordsFor(34);
+        for (int i = 0; i < ibans.size(); i++) {
+            String a = ibans.get(i);
+            String b = ibans.get((i * 31 + 17) % ibans.size());
+            long[] packedA = new long[words];
+            long[] packedB = new long[words];
+            assertTrue(IbanRiskIndex.pack(a, packedA));
+            assertTrue(IbanRiskIndex.pack(b, packedB));
+            assertEquals(Integer.signum(a.compareTo(b)), Integer.signum(Arrays.compare(packedA, packedB)), a + " vs " + b);
+        }
+    }
+
+    @Test
+    void distinctIbansPackDifferently() {
+        // A shorter IBAN is padded with 0, which no character encodes to
+        long[] shorter = new long[4];
+        long[] longer = new long[4];
+        assertTrue(IbanRiskIndex.pack("DE8937040044053201300", shorter));
+        assertTrue(IbanRiskIndex.pack("DE89370400440532013000", longer));
+        assertFalse(Arrays.equals(shorter, longer));
+
+        for (char c : ALPHABET.toCharArray()) {
+            long[] single = new long[1];
+            long[] other = new long[1];
+            assertTrue(IbanRiskIndex.pack(String.valueOf(c), single));
+            assertTrue(IbanRiskIndex.pack(c == 'Z' ? "Y" : "Z", other));
+            assertFalse(Arrays.equals(single, other));
+        }
+    }
+
+    @Test
+    void tableLooksUpEveryAddedIban() {
+        Random random = new Random(11);
+        List<String> ibans = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            ibans.add(randomIban(random));
+        }
+        ibans.add(MAX_LENGTH_IBAN);
+        ibans.add(ALPHABET.substring(0, 34));
+        ibans.add(ALPHABET.substring(2));
+        List<String> sorted = ibans.stream().distinct().sorted().toList();
+
+        // Starts small so the builder has to grow its buffer
+        IbanRiskIndex.TableBuilder builder = new IbanRiskIndex.TableBuilder(IbanRiskIndex.wordsFor(34), 10);
+        for (int i = 0; i < sorted.size(); i++) {
+            builder.add(sorted.get(i), levelFor(i));
+        }
+        builder.add("de-lowercase", "BLOCK");
+        IbanRiskIndex.Table table = builder.build();
+
+        assertEquals(sorted.size(), table.count);
+        for (int i = 0; i < sorted.size(); i++) {
+            assertEquals(levelFor(i), table.lookup(sorted.get(i)), sorted.get(i));
+        }
+        assertEquals("BLOCK", table.lookup("de-lowercase"));
+        assertNull(table.lookup("XX00NOTLISTED"));
+        assertNull(table.lookup(MAX_LENGTH_IBAN + "0"));
+    }
+
+    @Test
+    void builderRejectsRowsOutOfOrder() {
+        IbanRiskIndex.TableBuilder builder = new IbanRiskIndex.TableBuilder(3, 10);
+        builder.add("DE89370400440532013000", "GOOD");
+        assertThrows(IllegalStateException.class, () -> builder.add("AT611904300234573201", "GOOD"));
+        assertThrows(IllegalStateException.class, () -> builder.add("DE89370400440532013000", "GOOD"));
+    }
+
+    @Test
+    void packingDoesNotLeaveStaleWords() {
+        long[] words = new long[4];
+        assertTrue(IbanRiskIndex.pack(MAX_LENGTH_IBAN, words));
+        assertTrue(IbanRiskIndex.pack("AB", words));
+        long[] fresh = new long[4];
+        assertTrue(IbanRiskIndex.pack("AB", fresh));
+        assertArrayEquals(fresh, words);
+    }
+
+    private static String levelFor(int i) {
+        return switch (i % 3) {
+            case 0 -> "GOOD";
+            case 1 -> "REVIEW";
+            default -> "BLOCK";
+        };
+    }
+
+    private static String randomIban(Random random) {
+        int length = 15 + random.nextInt(20);
+        StringBuilder iban = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            iban.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return iban.toString();
+    }
+}
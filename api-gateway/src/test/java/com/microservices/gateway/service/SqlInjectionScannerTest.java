@@ -0,0 +1,224 @@
+package com.microservices.gateway.service;
+
+import com.microservices.gateway.service.SqlInjectionScanner.Rule;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the scanner against the checks it replaced: each regex matched against
+ * the whole input, then each keyword looked up in input.toLowerCase().
+ */
+class SqlInjectionScannerTest {
+
+    private static final String[] SERVICE_REGEXES = {
+        "(?i).*union.*select.*",
+        "(?i).*(--|#|/\\*|\\*/).*",
+        "(?i).*(or|and).*\\d+\\s*=\\s*\\d+.*",
+        "(?i).*(sleep|waitfor|delay|benchmark).*",
+        "(?i).*;.*;.*",
+        "(?i).*(load_file|into\\s+outfile|into\\s+dumpfile).*",
+        "(?i).*information_schema.*",
+        "(?i).*(sys\\.|pg_|mysql\\.).*",
+        "(?i).*0x[0-9a-f]+.*",
+        "(?i).*char\\s*\\(.*",
+        "(?i).*ascii\\s*\\(.*",
+        "(?i).*substring\\s*\\(.*",
+        "(?i).*length\\s*\\(.*",
+        "(?i).*cast\\s*\\(.*",
+        "(?i).*convert\\s*\\(.*",
+        "(?i).*(drop|create|alter|truncate|delete|insert|update).*table.*",
+        "(?i).*<script.*>.*",
+        "(?i).*'.*(or|and).*'.*"
+    };
+
+    private static final String[] FILTER_REGEXES = {
+        "(?i).*union.*select.*",
+        "(?i).*(--|#|/\\*|\\*/).*",
+        "(?i).*(or|and).*\\d+\\s*=\\s*\\d+.*",
+        "(?i).*(sleep|waitfor|delay|benchmark).*",
+        "(?i).*;.*",
+        "(?i).*(load_file|into\\s+outfile|into\\s+dumpfile).*",
+        "(?i).*information_schema.*",
+        "(?i).*(sys\\.|pg_|mysql\\.).*",
+        "(?i).*0x[0-9a-f]+.*",
+        "(?i).*char\\s*\\(.*",
+        "(?i).*ascii\\s*\\(.*",
+        "(?i).*substring\\s*\\(.*",
+        "(?i).*length\\s*\\(.*",
+        "(?i).*cast\\s*\\(.*",
+        "(?i).*convert\\s*\\(.*"
+    };
+
+    private static final String[] KEYWORDS = {
+        "'", "\"", "--", "/*", "*/", "xp_", "sp_", "exec", "execute",
+        "union", "script", "<script", "javascript:", "vbscript:",
+        "onload", "onerror", "onclick", "0x", "information_schema",
+        "drop", "create", "alter", "truncate", "delete", "insert", "update",
+        "grant", "revoke", "deny", "backup", "restore", "shutdown"
+    };
+
+    private static final EnumSet<Rule> SERVICE_RULES = EnumSet.of(
+        Rule.UNION_SELECT, Rule.COMMENT, Rule.BOOLEAN_COMPARISON, Rule.TIME_DELAY, Rule.STACKED_QUERIES,
+        Rule.FILE_FUNCTION, Rule.INFORMATION_SCHEMA, Rule.SYSTEM_TABLE, Rule.HEX_LITERAL, Rule.FUNCTION_CALL,
+        Rule.DDL_TABLE, Rule.SCRIPT_TAG, Rule.QUOTED_OR_AND);
+
+    private static final EnumSet<Rule> FILTER_RULES = EnumSet.of(
+        Rule.UNION_SELECT, Rule.COMMENT, Rule.BOOLEAN_COMPARISON, Rule.TIME_DELAY, Rule.SEMICOLON,
+        Rule.FILE_FUNCTION, Rule.INFORMATION_SCHEMA, Rule.SYSTEM_TABLE, Rule.HEX_LITERAL, Rule.FUNCTION_CALL);
+
+    private static final SqlInjectionScanner WITH_KEYWORDS = new SqlInjectionScanner(SERVICE_RULES, KEYWORDS);
+    private static final SqlInjectionScanner WITHOUT_KEYWORDS = new SqlInjectionScanner(SERVICE_RULES);
+    private static final SqlInjectionScanner FILTER = new SqlInjectionScanner(FILTER_RULES);
+
+    private static final Predicate<String> ORIGINAL_WITH_KEYWORDS = original(SERVICE_REGEXES, KEYWORDS);
+    private static final Predicate<String> ORIGINAL_WITHOUT_KEYWORDS = original(SERVICE_REGEXES);
+    private static final Predicate<String> ORIGINAL_FILTER = original(FILTER_REGEXES);
+
+    private static final String[] FRAGMENTS = {
+        "union", "UnIoN", "select", "SELECT", "--", "-", "#", "/*", "*/", "/", "*",
+        "or", "OR", "and", "o", "r", "an", "d", "1", "23", "=", "==",
+        "sleep", "waitfor", "delay", "benchmark", "benchmar", "load_file", "into", "INTO",
+        "outfile", "dumpfile", "into outfile", "into\toutfile", "information_schema",
+        "sys.", "sys", "pg_", "mysql.", "0x", "0X", "0", "x", "a", "f", "g", "F",
+        "char", "ascii", "substring", "length", "cast", "convert", "(", ")",
+        " ", "  ", "\t", "\n", "\r", "\u000B", "\f", "\u0085", "\u2028", "\u2029",
+        "drop", "create", "alter", "truncate", "delete", "insert", "update", "table", "tab", "le",
+        "<script", "<", "script", ">", "'", "\"", ";", "xp_", "sp_", "exec", "grant", "backup",
+        "\u212A", "\u0130", "\u0131", "\u00E9", "\u00DF", "k", "K", "i", "I",
+        "in", "to", "out", "file", "dump", "ter", "up", "date", "ins", "ert", "bac", "kup"
+    };
+
+    @Test
+    void keepsTheOriginalPatternsInOrder() {
+        List<String> patterns = new ArrayList<>();
+        for (Pattern pattern : WITH_KEYWORDS.getPatterns()) {
+            patterns.add(pattern.pattern());
+        }
+        assertEquals(List.of(SERVICE_REGEXES), patterns);
+    }
+
+    @Test
+    void agreesOnLineBreaks() {
+        // '.' does not match line terminators, so the original regexes miss a match split by one
+        assertAllAgree("union\nselect", "union select\n", "\nunion select", "union\rselect",
+            "union\u0085select", "union\u2028select", "union\u2029select", "union\r\nselect",
+            "1 or\n1=1", "1 or 1\n=1", "or 1=\n1", "a;\nb;c", "a;b\n;c", "x\nchar(", "char\n(",
+            "'\nor'", "'or\n'", "drop\ntable", "<script\n>", "<script>\n", "\n", "\r\n");
+    }
+
+    @Test
+    void agreesOnCaseFoldingSpecialCases() {
+        // KELVIN SIGN lower-cases to 'k'; LATIN CAPITAL I WITH DOT ABOVE to "i" and a combining dot
+        assertAllAgree("bac\u212Aup", "BAC\u212AUP", "\u212A", "\u0130nsert", "\u0130NSERT",
+            "\u0130", "\u0131nsert", "ex\u0130t", "scr\u0130pt", "unIon", "\u0130nformation_schema",
+            "s\u212Aip", "\u00DFunion", "union\u00DF", "\u00E9xec", "EXEC", "ExEcUtE");
+        assertTrue(WITH_KEYWORDS.isSuspicious("bac\u212Aup"));
+        assertFalse(WITH_KEYWORDS.isSuspicious("\u0130nsert"));
+    }
+
+    @Test
+    void agreesOnFileFunctions() {
+        assertAllAgree("into outfile", "into  outfile", "into\toutfile", "into\noutfile", "into \n outfile",
+            "into\u000Boutfile", "into\foutfile", "into\u0085outfile", "intooutfile", "into_outfile",
+            "INTO OUTFILE", "into dumpfile", "intodumpfile", "in to outfile", "into out file",
+            "load_file", "LOAD_FILE(", "load file");
+    }
+
+    @Test
+    void agreesOnHexLiterals() {
+        assertAllAgree("0x", "0x1", "0X1F", "0xg", "0xG", "0x 1", "x0x", "00x0", "0xx1", "0x\n1",
+            "amount 0xFF", "0", "x", "0X");
+    }
+
+    @Test
+    void agreesOnFunctionCalls() {
+        assertAllAgree("char (", "char(", "char  (", "char\t(", "char\n(", "charx(", "char", "char )",
+            "CHAR (", "varchar(", "ascii (", "substring\t(", "length(", "cast (", "convert(", "cast",
+            "(char", "ch ar(");
+    }
+
+    @Test
+    void agreesOnEveryCharInContext() {
+        String[][] contexts = {
+            {"", ""}, {"backu", "p"}, {"ba", "kup"}, {"in", "sert"}, {"or 1=", ""}, {"0x", ""},
+            {"char", "("}, {"union select", ""}, {"into", "outfile"}, {"'", "or'"}, {"a;", ";b"}
+        };
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            String s = String.valueOf((char) c);
+            for (String[] context : contexts) {
+                assertAllAgree(context[0] + s + context[1]);
+            }
+        }
+    }
+
+    @Test
+    void agreesOnRandomFragmentCombinations() {
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            StringBuilder input = new StringBuilder();
+            int fragments = 1 + random.nextInt(8);
+            for (int j = 0; j < fragments; j++) {
+                input.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+            }
+            assertAllAgree(input.toString());
+        }
+    }
+
+    @Test
+    void acceptsOrdinaryInput() {
+        for (String input : new String[] {"NL91ABNA0417164300", "Acme Supplies Ltd", "INV-2024/0001",
+                "1500.00", "Please pay invoice 77 before the end of the month, thanks"}) {
+            assertAllAgree(input);
+            assertFalse(WITH_KEYWORDS.isSuspicious(input), input);
+        }
+    }
+
+    private static void assertAllAgree(String... inputs) {
+        for (String input : inputs) {
+            assertEquals(ORIGINAL_WITH_KEYWORDS.test(input), WITH_KEYWORDS.isSuspicious(input),
+                () -> "with keywords: " + escape(input));
+            assertEquals(ORIGINAL_WITHOUT_KEYWORDS.test(input), WITHOUT_KEYWORDS.isSuspicious(input),
+                () -> "without keywords: " + escape(input));
+            assertEquals(ORIGINAL_FILTER.test(input), FILTER.isSuspicious(input), () -> "filter: " + escape(input));
+        }
+    }
+
+    private static String escape(String input) {
+        StringBuilder escaped = new StringBuilder();
+        for (char c : input.toCharArray()) {
+            escaped.append(c < 0x20 || c > 0x7E ? String.format("\\u%04X", (int) c) : String.valueOf(c));
+        }
+        return escaped.toString();
+    }
+
+    private static Predicate<String> original(String[] regexes, String... keywords) {
+        List<Pattern> patterns = new ArrayList<>();
+        for (String regex : regexes) {
+            patterns.add(Pattern.compile(regex, Pattern.CASE_INSENSITIVE));
+        }
+        return input -> {
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(input).matches()) {
+                    return true;
+                }
+            }
+            String lower = input.toLowerCase();
+            for (String keyword : keywords) {
+                if (lower.contains(keyword.toLowerCase())) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+}
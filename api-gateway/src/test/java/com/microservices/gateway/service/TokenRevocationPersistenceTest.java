@@ -0,0 +1,115 @@
+package com.microservices.gateway.service;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+@Testcontainers(disabledWithoutDocker = true)
+class TokenRevocationPersistenceTest {
+
+    private static final String SECRET = "test-secret-that-is-long-enough-for-hs512-signing-0123456789abcdef";
+
+    @Container
+    private static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15");
+
+    private JdbcTemplate jdbcTemplate;
+    private JwtService jwtService;
+    private UUID userId;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+            postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword()));
+        jdbcTemplate.execute("DROP TABLE IF EXISTS jwt_tokens, users");
+        // The columns the revocation list reads, as created by V1, V2, V13 and V15
+        jdbcTemplate.execute("""
+            CREATE TABLE users (
+                id UUID PRIMARY KEY,
+                is_active BOOLEAN DEFAULT true,
+                updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+            )""");
+        jdbcTemplate.execute("""
+            CREATE TABLE jwt_tokens (
+                id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
+                user_id UUID NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+                token_hash VARCHAR(255) NOT NULL,
+                expires_at TIMESTAMP NOT NULL,
+                is_revoked BOOLEAN DEFAULT false,
+                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                revoked_at TIMESTAMP NULL
+            )""");
+        jdbcTemplate.execute("CREATE UNIQUE INDEX idx_jwt_tokens_token_hash ON jwt_tokens(token_hash)");
+        userId = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO users (id) VALUES (?)", userId);
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        VerifiedTokenCache tokenCache = new VerifiedTokenCache(meterRegistry, true, 100);
+        jwtService = new JwtService(jdbcTemplate, mock(RedisTemplate.class),
+            new TokenRevocationList(jdbcTemplate, tokenCache, meterRegistry), tokenCache,
+            mock(TokenRevocationBroadcast.class), SECRET, SECRET, 3_600_000, 604_800_000);
+    }
+
+    @Test
+    void revocationOfTokenWithoutRowSurvivesReload() {
+        // Issued before V13 or its insert failed: no row under the fingerprint
+        String token = token();
+        jwtService.revokeToken(token);
+
+        TokenRevocationList restarted = freshList();
+        restarted.load();
+        assertTrue(restarted.isReady());
+        assertTrue(restarted.isRevoked(jwtService.fingerprint(token)));
+    }
+
+    @Test
+    void revocationOfStoredTokenUpdatesItsRow() {
+        String token = token();
+        String fingerprint = jwtService.fingerprint(token);
+        jdbcTemplate.update("""
+            INSERT INTO jwt_tokens (user_id, token_hash, expires_at, is_revoked)
+            VALUES (?, ?, now() + interval '1 hour', false)
+            """, userId, fingerprint);
+        jwtService.revokeToken(token);
+
+        assertEquals(1, jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM jwt_tokens WHERE token_hash = ? AND is_revoked AND revoked_at IS NOT NULL",
+            Integer.class, fingerprint));
+        TokenRevocationList restarted = freshList();
+        restarted.load();
+        assertTrue(restarted.isRevoked(fingerprint));
+    }
+
+    private TokenRevocationList freshList() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        return new TokenRevocationList(jdbcTemplate, new VerifiedTokenCache(meterRegistry, true, 100), meterRegistry);
+    }
+
+    private String token() {
+        Date now = new Date();
+        return Jwts.builder()
+            .subject(userId.toString())
+            .issuedAt(now)
+            .expiration(new Date(now.getTime() + 3_600_000))
+            .claim("username", "user")
+            .id(UUID.randomUUID().toString())
+            .signWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)), Jwts.SIG.HS512)
+            .compact();
+    }
+}
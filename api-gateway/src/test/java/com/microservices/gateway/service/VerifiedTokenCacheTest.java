@@ -0,0 +1,147 @@
+package com.microservices.gateway.service;
+
+import com.microservices.gateway.security.VerifiedToken;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VerifiedTokenCacheTest {
+
+    private static final long NOW = 1_000_000L;
+
+    @Test
+    void sketchCountsUpToFifteen() {
+        VerifiedTokenCache.FrequencySketch sketch = new VerifiedTokenCache.FrequencySketch(64);
+        assertEquals(0, sketch.frequency(42));
+        for (int i = 1; i <= 20; i++) {
+            sketch.increment(42);
+            assertEquals(Math.min(i, 15), sketch.frequency(42), "after " + i + " increments");
+        }
+    }
+
+    @Test
+    void sketchNeverUnderestimates() {
+        VerifiedTokenCache.FrequencySketch sketch = new VerifiedTokenCache.FrequencySketch(1024);
+        Random random = new Random(7);
+        int[] counts = new int[500];
+        // Fewer additions than the sample size, so nothing is halved
+        for (int n = 0; n < 5000; n++) {
+            int key = random.nextInt(counts.length);
+            sketch.increment(key);
+            counts[key]++;
+        }
+        for (int key = 0; key < counts.length; key++) {
+            assertTrue(sketch.frequency(key) >= Math.min(counts[key], 15), "key " + key);
+        }
+    }
+
+    @Test
+    void sketchHalvesCountsAfterSampleSizeAdditions() {
+        // 16 entries: a sample of 160 additions
+        VerifiedTokenCache.FrequencySketch sketch = new VerifiedTokenCache.FrequencySketch(16);
+        for (int i = 0; i < 15; i++) {
+            sketch.increment(-1);
+        }
+        // Saturated counters no longer count as additions
+        sketch.increment(-1);
+        assertEquals(15, sketch.frequency(-1));
+
+        int others = 0;
+        while (sketch.frequency(-1) == 15) {
+            sketch.increment(others++);
+        }
+        // Other keys may find all their counters saturated too, which delays the halving
+        assertTrue(others >= 160 - 15, "halved after " + others + " other keys");
+        assertEquals(7, sketch.frequency(-1));
+    }
+
+    @Test
+    void fullStripeTurnsAwayTokensSeenLessThanTheEldest() {
+        VerifiedTokenCache.Stripe stripe = new VerifiedTokenCache.Stripe(2);
+        VerifiedToken first = token(NOW + 60_000);
+        VerifiedToken second = token(NOW + 60_000);
+        stripe.put(1, first, NOW);
+        stripe.put(2, second, NOW);
+
+        stripe.put(3, token(NOW + 60_000), NOW);
+        assertEquals(2, stripe.size());
+        assertNull(stripe.get(3, "unused", NOW));
+        assertSame(first, stripe.get(1, first.getToken(), NOW));
+        assertSame(second, stripe.get(2, second.getToken(), NOW));
+    }
+
+    @Test
+    void fullStripeAdmitsAFrequentTokenInPlaceOfTheLeastRecentlyUsed() {
+        VerifiedTokenCache.Stripe stripe = new VerifiedTokenCache.Stripe(2);
+        VerifiedToken first = token(NOW + 60_000);
+        VerifiedToken second = token(NOW + 60_000);
+        VerifiedToken third = token(NOW + 60_000);
+        stripe.put(1, first, NOW);
+        stripe.put(2, second, NOW);
+        // 1 is now the most recently used, so 2 is the eldest
+        stripe.get(1, first.getToken(), NOW);
+        for (int i = 0; i < 3; i++) {
+            stripe.get(3, third.getToken(), NOW);
+        }
+
+        stripe.put(3, third, NOW);
+        assertEquals(2, stripe.size());
+        assertSame(third, stripe.get(3, third.getToken(), NOW));
+        assertSame(first, stripe.get(1, first.getToken(), NOW));
+        assertNull(stripe.get(2, second.getToken(), NOW));
+    }
+
+    @Test
+    void fullStripeAlwaysReplacesAnExpiredEldest() {
+        VerifiedTokenCache.Stripe stripe = new VerifiedTokenCache.Stripe(1);
+        VerifiedToken expiring = token(NOW + 1_000);
+        stripe.put(1, expiring, NOW);
+        for (int i = 0; i < 5; i++) {
+            stripe.get(1, expiring.getToken(), NOW);
+        }
+
+        VerifiedToken fresh = token(NOW + 60_000);
+        stripe.put(2, fresh, NOW + 1_000);
+        assertSame(fresh, stripe.get(2, fresh.getToken(), NOW + 1_000));
+    }
+
+    @Test
+    void getDropsExpiredAndMismatchedTokens() {
+        VerifiedTokenCache.Stripe stripe = new VerifiedTokenCache.Stripe(4);
+        VerifiedToken verified = token(NOW + 1_000);
+        stripe.put(1, verified, NOW);
+        assertNull(stripe.get(1, "another token", NOW));
+        assertEquals(0, stripe.size());
+
+        stripe.put(1, verified, NOW);
+        assertNotNull(stripe.get(1, verified.getToken(), NOW + 999));
+        assertNull(stripe.get(1, verified.getToken(), NOW + 1_000));
+        assertEquals(0, stripe.size());
+    }
+
+    @Test
+    void sweepRemovesOnlyExpiredEntries() {
+        VerifiedTokenCache.Stripe stripe = new VerifiedTokenCache.Stripe(4);
+        VerifiedToken live = token(NOW + 60_000);
+        stripe.put(1, token(NOW + 1_000), NOW);
+        stripe.put(2, live, NOW);
+        stripe.evictExpired(NOW + 1_000);
+        assertEquals(1, stripe.size());
+        assertSame(live, stripe.get(2, live.getToken(), NOW + 1_000));
+    }
+
+    private static VerifiedToken token(long expiresAtMillis) {
+        String subject = UUID.randomUUID().toString();
+        return new VerifiedToken("token-" + subject, "fingerprint-" + subject,
+            Jwts.claims().subject(subject).expiration(new Date(expiresAtMillis)).build());
+    }
+}
@@ -0,0 +1,38 @@
+-- V10__Track_iban_risk_change_retention.sql
+-- Record how far the change feed has been pruned, so a service starting from an
+-- IBAN risk snapshot can tell whether the feed still covers the snapshot's position
+
+CREATE TABLE risk.iban_risk_change_retention (
+    id BOOLEAN PRIMARY KEY DEFAULT TRUE CHECK (id),
+    pruned_through_txid BIGINT NOT NULL DEFAULT 0,
+    pruned_at TIMESTAMP
+);
+
+INSERT INTO risk.iban_risk_change_retention (id) VALUES (TRUE);
+
+CREATE OR REPLACE FUNCTION risk.prune_iban_risk_changes(retention INTERVAL) RETURNS INTEGER AS $$
+DECLARE
+    deleted_count INTEGER;
+    deleted_max_txid BIGINT;
+BEGIN
+    WITH deleted AS (
+        DELETE FROM risk.iban_risk_changes
+        WHERE changed_at < clock_timestamp() - retention
+        RETURNING txid
+    )
+    SELECT COUNT(*), MAX(txid) INTO deleted_count, deleted_max_txid FROM deleted;
+
+    IF deleted_max_txid IS NOT NULL THEN
+        UPDATE risk.iban_risk_change_retention
+        SET pruned_through_txid = GREATEST(pruned_through_txid, deleted_max_txid),
+            pruned_at = CURRENT_TIMESTAMP;
+    END IF;
+
+    RETURN deleted_count;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Snapshot export reads the high-water updated_at
+CREATE INDEX idx_iban_risk_lookup_updated_at ON risk.iban_risk_lookup(updated_at);
+
+COMMENT ON TABLE risk.iban_risk_change_retention IS 'Highest transaction whose IBAN risk changes have been pruned';
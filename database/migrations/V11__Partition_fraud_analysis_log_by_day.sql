@@ -0,0 +1,108 @@
+-- V11__Partition_fraud_analysis_log_by_day.sql
+-- Turn fraud_analysis_log into a table range-partitioned by day on created_at, so
+-- inserts and recent-window queries only touch the newest partitions and old
+-- history is retired by dropping whole partitions instead of deleting rows
+
+ALTER TABLE fraud_analysis_log RENAME TO fraud_analysis_log_unpartitioned;
+ALTER INDEX IF EXISTS fraud_analysis_log_pkey RENAME TO fraud_analysis_log_unpartitioned_pkey;
+ALTER INDEX IF EXISTS fraud_analysis_log_transaction_id_key RENAME TO fraud_analysis_log_unpartitioned_transaction_id_key;
+DROP TRIGGER IF EXISTS trigger_update_fraud_analysis_log_updated_at ON fraud_analysis_log_unpartitioned;
+
+-- Unique constraints on a partitioned table must include the partition key.
+-- risk_level also accepts the GOOD/REVIEW/BLOCK levels the gateway records.
+CREATE TABLE fraud_analysis_log (
+    id UUID NOT NULL DEFAULT gen_random_uuid(),
+    transaction_id VARCHAR(255) NOT NULL,
+    invoice_id VARCHAR(50) NOT NULL,
+    supplier_iban VARCHAR(34) NOT NULL,
+    amount DECIMAL(15,2) NOT NULL,
+    supplier_name VARCHAR(100) NOT NULL,
+    risk_status VARCHAR(20) NOT NULL CHECK (risk_status IN ('ALLOW', 'REVIEW', 'BLOCK')),
+    risk_level VARCHAR(20) NOT NULL CHECK (risk_level IN ('LOW', 'MEDIUM', 'HIGH', 'CRITICAL', 'GOOD', 'REVIEW', 'BLOCK')),
+    anomalies TEXT,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (id, created_at),
+    UNIQUE (transaction_id, created_at)
+) PARTITION BY RANGE (created_at);
+
+-- Catches rows outside the created partitions so an insert never fails for lack of one.
+-- Partitions are created days ahead, so it normally stays empty; a day with rows here
+-- cannot get its own partition until they are moved out.
+CREATE TABLE fraud_analysis_log_default PARTITION OF fraud_analysis_log DEFAULT;
+
+-- Velocity and duplicate queries filter by IBAN over a recent window
+CREATE INDEX idx_fraud_log_supplier_iban_created_at ON fraud_analysis_log(supplier_iban, created_at);
+-- Rows arrive in created_at order, so a BRIN index covers time ranges at a fraction of a B-tree's cost
+CREATE INDEX idx_fraud_log_created_at_brin ON fraud_analysis_log USING BRIN (created_at);
+
+CREATE TRIGGER trigger_update_fraud_analysis_log_updated_at
+    BEFORE UPDATE ON fraud_analysis_log
+    FOR EACH ROW
+    EXECUTE FUNCTION update_fraud_analysis_log_updated_at();
+
+-- Creates the daily partitions from the given day through days_ahead days after today.
+-- Returns the number of partitions created.
+CREATE OR REPLACE FUNCTION create_fraud_analysis_log_partitions(days_ahead INTEGER, from_day DATE DEFAULT CURRENT_DATE)
+RETURNS INTEGER AS $$
+DECLARE
+    partition_day DATE := from_day;
+    partition_name TEXT;
+    created_count INTEGER := 0;
+BEGIN
+    WHILE partition_day <= CURRENT_DATE + days_ahead LOOP
+        partition_name := 'fraud_analysis_log_' || to_char(partition_day, 'YYYYMMDD');
+        IF to_regclass(partition_name) IS NULL THEN
+            EXECUTE format(
+                'CREATE TABLE %I PARTITION OF fraud_analysis_log FOR VALUES FROM (%L) TO (%L)',
+                partition_name, partition_day, partition_day + 1);
+            created_count := created_count + 1;
+        END IF;
+        partition_day := partition_day + 1;
+    END LOOP;
+    RETURN created_count;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Drops the daily partitions that lie wholly before now - retention.
+-- Returns the number of partitions dropped.
+CREATE OR REPLACE FUNCTION drop_fraud_analysis_log_partitions(retention INTERVAL)
+RETURNS INTEGER AS $$
+DECLARE
+    expired RECORD;
+    dropped_count INTEGER := 0;
+BEGIN
+    FOR expired IN
+        SELECT c.relname
+        FROM pg_inherits i
+        JOIN pg_class c ON c.oid = i.inhrelid
+        WHERE i.inhparent = 'fraud_analysis_log'::regclass
+          AND c.relname ~ '^fraud_analysis_log_[0-9]{8}$'
+          AND to_date(substring(c.relname FROM '[0-9]{8}$'), 'YYYYMMDD') + 1 <= (CURRENT_TIMESTAMP - retention)::DATE
+    LOOP
+        EXECUTE format('DROP TABLE %I', expired.relname);
+        dropped_count := dropped_count + 1;
+    END LOOP;
+    RETURN dropped_count;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Partitions for the existing history and the coming week, then move the rows over
+SELECT create_fraud_analysis_log_partitions(7,
+    COALESCE((SELECT MIN(created_at)::DATE FROM fraud_analysis_log_unpartitioned), CURRENT_DATE));
+
+INSERT INTO fraud_analysis_log
+    (id, transaction_id, invoice_id, supplier_iban, amount, supplier_name,
+     risk_status, risk_level, anomalies, created_at, updated_at)
+SELECT id, transaction_id, invoice_id, supplier_iban, amount, supplier_name,
+       risk_status, risk_level, anomalies, created_at, updated_at
+FROM fraud_analysis_log_unpartitioned;
+
+DROP TABLE fraud_analysis_log_unpartitioned;
+
+COMMENT ON TABLE fraud_analysis_log IS 'Logs all fraud detection analysis results, partitioned by day on created_at';
+COMMENT ON COLUMN fraud_analysis_log.transaction_id IS 'Unique identifier for the fraud analysis transaction';
+COMMENT ON COLUMN fraud_analysis_log.risk_level IS 'Risk level: GOOD, REVIEW or BLOCK (LOW, MEDIUM, HIGH or CRITICAL in older rows)';
+COMMENT ON COLUMN fraud_analysis_log.created_at IS 'Timestamp when the analysis was performed; partition key';
+COMMENT ON FUNCTION create_fraud_analysis_log_partitions(INTEGER, DATE) IS 'Creates missing daily fraud_analysis_log partitions';
+COMMENT ON FUNCTION drop_fraud_analysis_log_partitions(INTERVAL) IS 'Drops fraud_analysis_log partitions older than the retention';
@@ -0,0 +1,18 @@
+-- V12__Index_audit_logs_for_keyset_pagination.sql
+-- Audit logs are paged newest first by (created_at, id). These indexes let a page
+-- start from the previous page's last row instead of counting past OFFSET rows
+
+-- A row without created_at could never be reached by a cursor
+UPDATE audit.audit_logs SET created_at = CURRENT_TIMESTAMP WHERE created_at IS NULL;
+ALTER TABLE audit.audit_logs ALTER COLUMN created_at SET NOT NULL;
+
+-- Both are read backwards for newest-first pages and replace the single-column
+-- indexes they start with
+CREATE INDEX idx_audit_logs_created_at_id ON audit.audit_logs(created_at, id);
+CREATE INDEX idx_audit_logs_user_id_created_at_id ON audit.audit_logs(user_id, created_at, id);
+
+DROP INDEX IF EXISTS audit.idx_audit_logs_created_at;
+DROP INDEX IF EXISTS audit.idx_audit_logs_user_id;
+
+COMMENT ON INDEX audit.idx_audit_logs_created_at_id IS 'Keyset pagination over all audit logs';
+COMMENT ON INDEX audit.idx_audit_logs_user_id_created_at_id IS 'Keyset pagination over one user''s audit logs; also serves the user_id foreign key';
@@ -0,0 +1,13 @@
+-- V13__Index_jwt_tokens_by_fingerprint.sql
+-- token_hash now holds a keyed HMAC-SHA-256 fingerprint of the token instead of a
+-- salted BCrypt hash, so a token is found by an exact match on a unique index.
+-- Rows written before this hold BCrypt hashes that nothing can match; they stay
+-- until their tokens expire
+
+CREATE UNIQUE INDEX idx_jwt_tokens_token_hash ON jwt_tokens(token_hash);
+DROP INDEX IF EXISTS idx_jwt_tokens_hash;
+
+-- Gateway instances poll for newly revoked tokens
+CREATE INDEX idx_jwt_tokens_revoked_at ON jwt_tokens(revoked_at) WHERE is_revoked;
+
+COMMENT ON COLUMN jwt_tokens.token_hash IS 'Hex HMAC-SHA-256 of the token under the gateway fingerprint key';
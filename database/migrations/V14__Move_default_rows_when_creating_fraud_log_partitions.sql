@@ -0,0 +1,53 @@
+-- V14__Move_default_rows_when_creating_fraud_log_partitions.sql
+-- Once the default partition of fraud_analysis_log holds a row for a day without a
+-- partition, CREATE TABLE ... PARTITION OF for that day fails ("updated partition
+-- constraint for default partition would be violated"), and with it the whole
+-- create_fraud_analysis_log_partitions call, so no later day got a partition either.
+-- Such a day's rows are now moved out of the default partition into a new table that
+-- is then attached as the day's partition, and each day is handled in its own
+-- subtransaction: a day that still fails is reported and skipped, the rest go ahead.
+
+CREATE OR REPLACE FUNCTION create_fraud_analysis_log_partitions(days_ahead INTEGER, from_day DATE DEFAULT CURRENT_DATE)
+RETURNS INTEGER AS $$
+DECLARE
+    partition_day DATE := from_day;
+    partition_name TEXT;
+    created_count INTEGER := 0;
+BEGIN
+    WHILE partition_day <= CURRENT_DATE + days_ahead LOOP
+        partition_name := 'fraud_analysis_log_' || to_char(partition_day, 'YYYYMMDD');
+        IF to_regclass(partition_name) IS NULL THEN
+            BEGIN
+                IF EXISTS (SELECT 1 FROM fraud_analysis_log_default
+                           WHERE created_at >= partition_day AND created_at < partition_day + 1) THEN
+                    -- Hold off inserts into the default partition until the day is attached
+                    LOCK TABLE fraud_analysis_log_default IN SHARE ROW EXCLUSIVE MODE;
+                    EXECUTE format(
+                        'CREATE TABLE %I (LIKE fraud_analysis_log INCLUDING DEFAULTS INCLUDING CONSTRAINTS)',
+                        partition_name);
+                    EXECUTE format(
+                        'WITH moved AS (DELETE FROM fraud_analysis_log_default
+                                        WHERE created_at >= %L AND created_at < %L RETURNING *)
+                         INSERT INTO %I SELECT * FROM moved',
+                        partition_day, partition_day + 1, partition_name);
+                    EXECUTE format(
+                        'ALTER TABLE fraud_analysis_log ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)',
+                        partition_name, partition_day, partition_day + 1);
+                ELSE
+                    EXECUTE format(
+                        'CREATE TABLE %I PARTITION OF fraud_analysis_log FOR VALUES FROM (%L) TO (%L)',
+                        partition_name, partition_day, partition_day + 1);
+                END IF;
+                created_count := created_count + 1;
+            EXCEPTION WHEN OTHERS THEN
+                RAISE WARNING 'Could not create partition % of fraud_analysis_log: %', partition_name, SQLERRM;
+            END;
+        END IF;
+        partition_day := partition_day + 1;
+    END LOOP;
+    RETURN created_count;
+END;
+$$ LANGUAGE plpgsql;
+
+COMMENT ON FUNCTION create_fraud_analysis_log_partitions(INTEGER, DATE) IS 'Creates missing daily fraud_analysis_log partitions, moving their rows out of the default partition';
+COMMENT ON TABLE fraud_analysis_log_default IS 'Rows for days without a partition; moved out when the day''s partition is created';
@@ -0,0 +1,21 @@
+-- V15__Track_user_changes_for_revocation_polling.sql
+-- Gateway instances poll users for accounts activated or deactivated since their
+-- last poll instead of rereading every inactive user, which needs updated_at to
+-- move whenever a row changes, however it is updated
+
+CREATE OR REPLACE FUNCTION update_users_updated_at()
+RETURNS TRIGGER AS $$
+BEGIN
+    NEW.updated_at = CURRENT_TIMESTAMP;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trigger_update_users_updated_at
+    BEFORE UPDATE ON users
+    FOR EACH ROW
+    EXECUTE FUNCTION update_users_updated_at();
+
+CREATE INDEX idx_users_updated_at ON users(updated_at);
+
+COMMENT ON COLUMN users.updated_at IS 'Last change to the row, set by trigger_update_users_updated_at';
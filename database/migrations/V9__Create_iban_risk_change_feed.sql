@@ -0,0 +1,71 @@
+-- V9__Create_iban_risk_change_feed.sql
+-- Change feed for risk.iban_risk_lookup so services can apply deltas to their
+-- in-memory copy instead of reloading the whole table
+
+CREATE TABLE risk.iban_risk_changes (
+    id BIGSERIAL PRIMARY KEY,
+    iban VARCHAR(34) NOT NULL,
+    risk_level VARCHAR(10),
+    txid BIGINT NOT NULL DEFAULT txid_current(),
+    changed_at TIMESTAMP NOT NULL DEFAULT clock_timestamp()
+);
+
+-- Pollers read by transaction id: rows below the oldest running transaction
+-- (txid_snapshot_xmin) are final, so a poller never skips a row whose
+-- transaction commits after a higher id became visible
+CREATE INDEX idx_iban_risk_changes_txid ON risk.iban_risk_changes(txid);
+CREATE INDEX idx_iban_risk_changes_changed_at ON risk.iban_risk_changes(changed_at);
+
+-- Record one change row per affected IBAN; risk_level is NULL when the IBAN was removed
+CREATE OR REPLACE FUNCTION risk.record_iban_risk_change() RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        INSERT INTO risk.iban_risk_changes (iban, risk_level) VALUES (OLD.iban, NULL);
+        RETURN OLD;
+    END IF;
+
+    IF TG_OP = 'UPDATE' AND OLD.iban <> NEW.iban THEN
+        INSERT INTO risk.iban_risk_changes (iban, risk_level) VALUES (OLD.iban, NULL);
+    END IF;
+
+    IF TG_OP = 'INSERT' OR OLD.iban <> NEW.iban OR OLD.risk_level IS DISTINCT FROM NEW.risk_level THEN
+        INSERT INTO risk.iban_risk_changes (iban, risk_level) VALUES (NEW.iban, NEW.risk_level);
+    END IF;
+
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Keep updated_at current; V8 added the column but nothing maintains it
+CREATE OR REPLACE FUNCTION risk.update_iban_risk_lookup_updated_at() RETURNS TRIGGER AS $$
+BEGIN
+    NEW.updated_at = CURRENT_TIMESTAMP;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trigger_update_iban_risk_lookup_updated_at
+    BEFORE UPDATE ON risk.iban_risk_lookup
+    FOR EACH ROW
+    EXECUTE FUNCTION risk.update_iban_risk_lookup_updated_at();
+
+-- TRUNCATE does not fire row triggers; services must be restarted after one
+CREATE TRIGGER trigger_record_iban_risk_change
+    AFTER INSERT OR UPDATE OR DELETE ON risk.iban_risk_lookup
+    FOR EACH ROW
+    EXECUTE FUNCTION risk.record_iban_risk_change();
+
+-- Remove change rows older than the retention period, e.g. SELECT risk.prune_iban_risk_changes('7 days')
+CREATE OR REPLACE FUNCTION risk.prune_iban_risk_changes(retention INTERVAL) RETURNS INTEGER AS $$
+DECLARE
+    deleted_count INTEGER;
+BEGIN
+    DELETE FROM risk.iban_risk_changes WHERE changed_at < clock_timestamp() - retention;
+    GET DIAGNOSTICS deleted_count = ROW_COUNT;
+    RETURN deleted_count;
+END;
+$$ LANGUAGE plpgsql;
+
+COMMENT ON TABLE risk.iban_risk_changes IS 'Trigger-fed change log of risk.iban_risk_lookup consumed by service-side risk indexes';
+COMMENT ON COLUMN risk.iban_risk_changes.risk_level IS 'New risk level, NULL when the IBAN was removed';
+COMMENT ON COLUMN risk.iban_risk_changes.txid IS 'Transaction that made the change, used as the poll position';